@@ -0,0 +1,166 @@
+package com.agehua.horizontalcoordinatordemo;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.MotionEvent;
+import android.view.View;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+public class HorizontalCoordinatorLayoutTouchTest {
+
+    private static final int GESTURE_COUNT = 20;
+
+    private HorizontalCoordinatorLayout mLayout;
+    private RecordingBehavior mLowerBehavior;
+
+    private MotionEvent mDown;
+    private MotionEvent mMove;
+    private MotionEvent mUp;
+
+    /**
+     * Intercepts once the touch moves.
+     */
+    static class InterceptingBehavior extends HorizontalCoordinatorLayout.Behavior<View> {
+        @Override
+        public boolean onInterceptTouchEvent(HorizontalCoordinatorLayout parent, View child,
+                MotionEvent ev) {
+            return ev.getActionMasked() == MotionEvent.ACTION_MOVE;
+        }
+
+        @Override
+        public boolean onTouchEvent(HorizontalCoordinatorLayout parent, View child,
+                MotionEvent ev) {
+            return true;
+        }
+    }
+
+    /**
+     * Records the cancel events it receives. The events are only compared by identity, never
+     * read after the call.
+     */
+    static class RecordingBehavior extends HorizontalCoordinatorLayout.Behavior<View> {
+        final List<MotionEvent> mCancelEvents = new ArrayList<>();
+        long mLastCancelTime;
+
+        @Override
+        public boolean onInterceptTouchEvent(HorizontalCoordinatorLayout parent, View child,
+                MotionEvent ev) {
+            recordIfCancel(ev);
+            return false;
+        }
+
+        @Override
+        public boolean onTouchEvent(HorizontalCoordinatorLayout parent, View child,
+                MotionEvent ev) {
+            recordIfCancel(ev);
+            return false;
+        }
+
+        private void recordIfCancel(MotionEvent ev) {
+            if (ev.getActionMasked() == MotionEvent.ACTION_CANCEL) {
+                mCancelEvents.add(ev);
+                mLastCancelTime = ev.getEventTime();
+            }
+        }
+    }
+
+    @Before
+    public void setUp() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mLayout = new HorizontalCoordinatorLayout(
+                        InstrumentationRegistry.getTargetContext());
+
+                // Children added later are on top, and so offered the events first
+                final HorizontalCoordinatorLayout.LayoutParams lowerParams =
+                        new HorizontalCoordinatorLayout.LayoutParams(100, 100);
+                mLowerBehavior = new RecordingBehavior();
+                lowerParams.setBehavior(mLowerBehavior);
+                mLayout.addView(new View(mLayout.getContext()), lowerParams);
+
+                final HorizontalCoordinatorLayout.LayoutParams upperParams =
+                        new HorizontalCoordinatorLayout.LayoutParams(100, 100);
+                upperParams.setBehavior(new InterceptingBehavior());
+                mLayout.addView(new View(mLayout.getContext()), upperParams);
+            }
+        });
+
+        final long downTime = SystemClock.uptimeMillis();
+        mDown = MotionEvent.obtain(downTime, downTime, MotionEvent.ACTION_DOWN, 10f, 10f, 0);
+        mMove = MotionEvent.obtain(downTime, downTime + 10, MotionEvent.ACTION_MOVE, 50f, 10f, 0);
+        mUp = MotionEvent.obtain(downTime, downTime + 20, MotionEvent.ACTION_UP, 50f, 10f, 0);
+    }
+
+    @After
+    public void tearDown() {
+        mDown.recycle();
+        mMove.recycle();
+        mUp.recycle();
+    }
+
+    @Test
+    public void cancelEventIsReused() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < GESTURE_COUNT; i++) {
+                    performGesture();
+                }
+            }
+        });
+
+        final List<MotionEvent> cancelEvents = mLowerBehavior.mCancelEvents;
+        assertTrue(cancelEvents.size() >= GESTURE_COUNT);
+        final MotionEvent first = cancelEvents.get(0);
+        assertNotNull(first);
+        for (int i = 1; i < cancelEvents.size(); i++) {
+            // The same pooled instance every time, rather than a new event per cancel
+            assertSame(first, cancelEvents.get(i));
+        }
+    }
+
+    @Test
+    public void cancelEventHasCurrentTime() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                performGesture();
+            }
+        });
+        SystemClock.sleep(20);
+
+        final long secondGestureTime = SystemClock.uptimeMillis();
+        final int cancelCount = mLowerBehavior.mCancelEvents.size();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                performGesture();
+            }
+        });
+        assertTrue(mLowerBehavior.mCancelEvents.size() > cancelCount);
+        assertTrue(mLowerBehavior.mLastCancelTime >= secondGestureTime);
+    }
+
+    private void performGesture() {
+        mLayout.onInterceptTouchEvent(mDown);
+        mLayout.onTouchEvent(mDown);
+        // The upper Behavior intercepts here, cancelling the lower one
+        mLayout.onInterceptTouchEvent(mMove);
+        mLayout.onTouchEvent(mMove);
+        mLayout.onTouchEvent(mUp);
+    }
+}
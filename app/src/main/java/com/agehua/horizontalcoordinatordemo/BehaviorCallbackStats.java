@@ -0,0 +1,212 @@
+package com.agehua.horizontalcoordinatordemo;
+
+import android.support.annotation.IntDef;
+import android.support.annotation.NonNull;
+import android.support.annotation.RestrictTo;
+import android.support.v4.util.SimpleArrayMap;
+
+import java.io.PrintWriter;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayList;
+import java.util.List;
+
+import static android.support.annotation.RestrictTo.Scope.LIBRARY_GROUP;
+
+/**
+ * Records how often and how long the {@link HorizontalCoordinatorLayout.Behavior} callbacks of
+ * a {@link HorizontalCoordinatorLayout} take, per Behavior class.
+ *
+ * <p>Attach an instance with
+ * {@link HorizontalCoordinatorLayout#setBehaviorCallbackStats(BehaviorCallbackStats)}. Each
+ * callback duration is added to a fixed set of histogram buckets, so nothing is allocated once
+ * a Behavior class has been seen. Like the layout itself, instances must only be used from the
+ * UI thread.</p>
+ */
+public final class BehaviorCallbackStats {
+
+    public static final int CALLBACK_MEASURE_CHILD = 0;
+    public static final int CALLBACK_LAYOUT_CHILD = 1;
+    public static final int CALLBACK_DEPENDENT_VIEW_CHANGED = 2;
+    public static final int CALLBACK_NESTED_PRE_SCROLL = 3;
+    public static final int CALLBACK_INTERCEPT_TOUCH_EVENT = 4;
+
+    private static final int CALLBACK_COUNT = 5;
+
+    /** @hide */
+    @RestrictTo(LIBRARY_GROUP)
+    @Retention(RetentionPolicy.SOURCE)
+    @IntDef({CALLBACK_MEASURE_CHILD, CALLBACK_LAYOUT_CHILD, CALLBACK_DEPENDENT_VIEW_CHANGED,
+            CALLBACK_NESTED_PRE_SCROLL, CALLBACK_INTERCEPT_TOUCH_EVENT})
+    public @interface Callback {}
+
+    private static final String[] CALLBACK_NAMES = {
+            "onMeasureChild",
+            "onLayoutChild",
+            "onDependentViewChanged",
+            "onNestedPreScroll",
+            "onInterceptTouchEvent"
+    };
+
+    /**
+     * Upper bounds of the histogram buckets in microseconds. The last bucket holds everything
+     * above the last bound.
+     */
+    private static final long[] BUCKET_UPPER_BOUNDS_US = {
+            50, 100, 250, 500, 1000, 2000, 4000, 8000, 16000
+    };
+
+    private static final int BUCKET_COUNT = BUCKET_UPPER_BOUNDS_US.length + 1;
+
+    private final SimpleArrayMap<Class<?>, Entry> mEntries = new SimpleArrayMap<>();
+
+    private static final class Entry {
+        final long[] mCallCounts = new long[CALLBACK_COUNT];
+        final long[] mTotalNanos = new long[CALLBACK_COUNT];
+        final long[] mMaxNanos = new long[CALLBACK_COUNT];
+        final long[][] mBuckets = new long[CALLBACK_COUNT][BUCKET_COUNT];
+    }
+
+    /**
+     * Record a single invocation of a callback.
+     *
+     * @param behaviorClass the class of the Behavior which was called
+     * @param callback the callback which was called
+     * @param durationNanos how long the call took
+     */
+    public void record(@NonNull Class<?> behaviorClass, @Callback int callback,
+            long durationNanos) {
+        Entry entry = mEntries.get(behaviorClass);
+        if (entry == null) {
+            entry = new Entry();
+            mEntries.put(behaviorClass, entry);
+        }
+        entry.mCallCounts[callback]++;
+        entry.mTotalNanos[callback] += durationNanos;
+        entry.mMaxNanos[callback] = Math.max(entry.mMaxNanos[callback], durationNanos);
+        entry.mBuckets[callback][getBucket(durationNanos)]++;
+    }
+
+    private static int getBucket(long durationNanos) {
+        final long durationUs = durationNanos / 1000;
+        for (int i = 0; i < BUCKET_UPPER_BOUNDS_US.length; i++) {
+            if (durationUs < BUCKET_UPPER_BOUNDS_US[i]) {
+                return i;
+            }
+        }
+        return BUCKET_UPPER_BOUNDS_US.length;
+    }
+
+    /**
+     * Returns the Behavior classes which have had at least one callback recorded.
+     */
+    @NonNull
+    public List<Class<?>> getBehaviorClasses() {
+        final List<Class<?>> result = new ArrayList<>(mEntries.size());
+        for (int i = 0, size = mEntries.size(); i < size; i++) {
+            result.add(mEntries.keyAt(i));
+        }
+        return result;
+    }
+
+    /**
+     * Returns how often the callback has been called for the given Behavior class.
+     */
+    public long getCallCount(@NonNull Class<?> behaviorClass, @Callback int callback) {
+        final Entry entry = mEntries.get(behaviorClass);
+        return entry != null ? entry.mCallCounts[callback] : 0;
+    }
+
+    /**
+     * Returns the total time spent in the callback for the given Behavior class, in nanoseconds.
+     */
+    public long getTotalTimeNanos(@NonNull Class<?> behaviorClass, @Callback int callback) {
+        final Entry entry = mEntries.get(behaviorClass);
+        return entry != null ? entry.mTotalNanos[callback] : 0;
+    }
+
+    /**
+     * Returns the longest single call of the callback for the given Behavior class, in
+     * nanoseconds.
+     */
+    public long getMaxTimeNanos(@NonNull Class<?> behaviorClass, @Callback int callback) {
+        final Entry entry = mEntries.get(behaviorClass);
+        return entry != null ? entry.mMaxNanos[callback] : 0;
+    }
+
+    /**
+     * Returns the number of histogram buckets.
+     */
+    public int getBucketCount() {
+        return BUCKET_COUNT;
+    }
+
+    /**
+     * Returns the exclusive upper bound of the given histogram bucket in microseconds, or
+     * {@link Long#MAX_VALUE} for the last bucket.
+     */
+    public long getBucketUpperBoundMicros(int bucket) {
+        return bucket < BUCKET_UPPER_BOUNDS_US.length
+                ? BUCKET_UPPER_BOUNDS_US[bucket] : Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns how many calls of the callback for the given Behavior class fell into the given
+     * histogram bucket.
+     */
+    public long getBucketCallCount(@NonNull Class<?> behaviorClass, @Callback int callback,
+            int bucket) {
+        final Entry entry = mEntries.get(behaviorClass);
+        return entry != null ? entry.mBuckets[callback][bucket] : 0;
+    }
+
+    /**
+     * Clear everything recorded so far.
+     */
+    public void reset() {
+        mEntries.clear();
+    }
+
+    /**
+     * Print everything recorded so far in a human readable form.
+     */
+    public void dump(@NonNull PrintWriter pw) {
+        pw.println("Behavior callback stats:");
+        for (int i = 0, size = mEntries.size(); i < size; i++) {
+            final Entry entry = mEntries.valueAt(i);
+            pw.print("  ");
+            pw.println(mEntries.keyAt(i).getName());
+            for (int callback = 0; callback < CALLBACK_COUNT; callback++) {
+                final long count = entry.mCallCounts[callback];
+                if (count == 0) {
+                    continue;
+                }
+                pw.print("    ");
+                pw.print(CALLBACK_NAMES[callback]);
+                pw.print(": calls=");
+                pw.print(count);
+                pw.print(" totalUs=");
+                pw.print(entry.mTotalNanos[callback] / 1000);
+                pw.print(" avgUs=");
+                pw.print(entry.mTotalNanos[callback] / 1000 / count);
+                pw.print(" maxUs=");
+                pw.println(entry.mMaxNanos[callback] / 1000);
+
+                pw.print("      histogram:");
+                final long[] buckets = entry.mBuckets[callback];
+                for (int b = 0; b < BUCKET_COUNT; b++) {
+                    if (buckets[b] == 0) {
+                        continue;
+                    }
+                    pw.print(b < BUCKET_UPPER_BOUNDS_US.length ? " <" : " >=");
+                    pw.print(b < BUCKET_UPPER_BOUNDS_US.length
+                            ? BUCKET_UPPER_BOUNDS_US[b]
+                            : BUCKET_UPPER_BOUNDS_US[BUCKET_UPPER_BOUNDS_US.length - 1]);
+                    pw.print("us=");
+                    pw.print(buckets[b]);
+                }
+                pw.println();
+            }
+        }
+    }
+}
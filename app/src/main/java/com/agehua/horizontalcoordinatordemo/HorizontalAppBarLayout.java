@@ -1,6 +1,5 @@
 package com.agehua.horizontalcoordinatordemo;
 
-import android.animation.ValueAnimator;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Rect;
@@ -21,7 +20,6 @@ import android.support.v4.view.WindowInsetsCompat;
 import android.util.AttributeSet;
 import android.view.View;
 import android.view.ViewGroup;
-import android.view.animation.DecelerateInterpolator;
 import android.view.animation.Interpolator;
 import android.widget.LinearLayout;
 
@@ -46,13 +44,33 @@ public class HorizontalAppBarLayout extends LinearLayout {
         void onOffsetChanged(HorizontalAppBarLayout appBarLayout, int verticalOffset);
     }
 
-    private static final int INVALID_SCROLL_RANGE = -1;
+    /**
+     * Interface definition for a callback to be invoked at most once per frame when the offset
+     * of an {@link HorizontalAppBarLayout} has changed. Unlike {@link OnOffsetChangedListener}
+     * it does not see every intermediate offset, only the latest one when the frame is drawn.
+     *
+     * @see #addOnFrameOffsetChangedListener(OnFrameOffsetChangedListener)
+     */
+    public interface OnFrameOffsetChangedListener {
+        /**
+         * Called on the next animation frame after the offset of the layout changed.
+         *
+         * @param appBarLayout the {@link HorizontalAppBarLayout} whose offset changed
+         * @param offset the latest offset in px
+         * @param collapseFraction how far the layout is collapsed, from 0 when fully expanded
+         *                         to 1 when all of {@link #getTotalScrollRange()} is scrolled
+         */
+        void onOffsetChanged(HorizontalAppBarLayout appBarLayout, int offset,
+                float collapseFraction);
+    }
 
-    private int mTotalScrollRange = INVALID_SCROLL_RANGE;
-    private int mDownPreScrollRange = INVALID_SCROLL_RANGE;
-    private int mDownScrollRange = INVALID_SCROLL_RANGE;
+    private static final int INVALID_OFFSET = Integer.MIN_VALUE;
+
+    // Built on every layout pass, or lazily when the scroll ranges are needed before it
+    private ChildExtents mChildExtents;
 
     private boolean mHaveChildWithInterpolator;
+    private boolean mScrollInterpolatorTablesEnabled;
 
     private int mPendingAction = PENDING_ACTION_NONE;
 
@@ -60,6 +78,19 @@ public class HorizontalAppBarLayout extends LinearLayout {
 
     private List<OnOffsetChangedListener> mListeners;
 
+    private List<OnFrameOffsetChangedListener> mFrameListeners;
+    private int mPendingFrameOffset;
+    private int mLastFrameOffset = INVALID_OFFSET;
+    private float mLastFrameCollapseFraction;
+    private boolean mFrameOffsetDispatchScheduled;
+    private final Runnable mFrameOffsetDispatchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mFrameOffsetDispatchScheduled = false;
+            dispatchFrameOffsetUpdates(mPendingFrameOffset);
+        }
+    };
+
     private boolean mCollapsible;
     private boolean mCollapsed;
 
@@ -131,6 +162,49 @@ public class HorizontalAppBarLayout extends LinearLayout {
         }
     }
 
+    /**
+     * Add a listener that will be called at most once per frame when the offset of this
+     * {@link HorizontalAppBarLayout} changes, with the latest offset and collapse fraction.
+     * Use {@link #addOnOffsetChangedListener(OnOffsetChangedListener)} instead if every
+     * single offset change is needed.
+     *
+     * @param listener The listener that will be called when the offset changes.
+     *
+     * @see #removeOnFrameOffsetChangedListener(HorizontalAppBarLayout.OnFrameOffsetChangedListener)
+     */
+    public void addOnFrameOffsetChangedListener(
+            HorizontalAppBarLayout.OnFrameOffsetChangedListener listener) {
+        if (mFrameListeners == null) {
+            mFrameListeners = new ArrayList<>();
+        }
+        if (listener != null && !mFrameListeners.contains(listener)) {
+            mFrameListeners.add(listener);
+            // Make sure the new listener hears about the next offset, even if unchanged
+            mLastFrameOffset = INVALID_OFFSET;
+        }
+    }
+
+    /**
+     * Remove the previously added {@link HorizontalAppBarLayout.OnFrameOffsetChangedListener}.
+     *
+     * @param listener the listener to remove.
+     */
+    public void removeOnFrameOffsetChangedListener(
+            HorizontalAppBarLayout.OnFrameOffsetChangedListener listener) {
+        if (mFrameListeners != null && listener != null) {
+            mFrameListeners.remove(listener);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (mFrameOffsetDispatchScheduled) {
+            removeCallbacks(mFrameOffsetDispatchRunnable);
+            mFrameOffsetDispatchScheduled = false;
+        }
+    }
+
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
         super.onMeasure(widthMeasureSpec, heightMeasureSpec);
@@ -140,7 +214,7 @@ public class HorizontalAppBarLayout extends LinearLayout {
     @Override
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
         super.onLayout(changed, l, t, r, b);
-        invalidateScrollRanges();
+        mChildExtents = new ChildExtents(this);
 
         mHaveChildWithInterpolator = false;
         for (int i = 0, z = getChildCount(); i < z; i++) {
@@ -151,7 +225,12 @@ public class HorizontalAppBarLayout extends LinearLayout {
 
             if (interpolator != null) {
                 mHaveChildWithInterpolator = true;
-                break;
+                if (!mScrollInterpolatorTablesEnabled) {
+                    break;
+                }
+                if (childLp.mScrollInterpolatorTable == null) {
+                    childLp.mScrollInterpolatorTable = new InterpolatorLookupTable(interpolator);
+                }
             }
         }
 
@@ -174,10 +253,19 @@ public class HorizontalAppBarLayout extends LinearLayout {
     }
 
     private void invalidateScrollRanges() {
-        // Invalidate the scroll ranges
-        mTotalScrollRange = INVALID_SCROLL_RANGE;
-        mDownPreScrollRange = INVALID_SCROLL_RANGE;
-        mDownScrollRange = INVALID_SCROLL_RANGE;
+        // Invalidate the scroll ranges, they are rebuilt along with the child extents
+        mChildExtents = null;
+    }
+
+    /**
+     * Returns the extents and scroll ranges of the children from the last layout pass.
+     */
+    @NonNull
+    ChildExtents getChildExtents() {
+        if (mChildExtents == null) {
+            mChildExtents = new ChildExtents(this);
+        }
+        return mChildExtents;
     }
 
     @Override
@@ -259,41 +347,51 @@ public class HorizontalAppBarLayout extends LinearLayout {
     }
 
     /**
-     * Returns the scroll range of all children.
+     * Sets whether the scroll interpolators of the children are sampled into lookup tables when
+     * laid out. Scrolling then interpolates between the samples instead of evaluating the
+     * interpolator on every offset change, which is considerably cheaper for path based
+     * interpolators. The interpolated offsets may differ from the exact ones by a fraction of a
+     * pixel, see {@link InterpolatorLookupTable} for the error bound.
      *
-     * @return the scroll range in px
+     * @param enabled true to use lookup tables for the scroll interpolators
+     *
+     * @see LayoutParams#setScrollInterpolator(Interpolator)
      */
-    public final int getTotalScrollRange() {
-        if (mTotalScrollRange != INVALID_SCROLL_RANGE) {
-            return mTotalScrollRange;
+    public void setScrollInterpolatorTablesEnabled(boolean enabled) {
+        if (mScrollInterpolatorTablesEnabled != enabled) {
+            mScrollInterpolatorTablesEnabled = enabled;
+            // The tables are built in onLayout
+            requestLayout();
         }
+    }
 
-        int range = 0;
-        for (int i = 0, z = getChildCount(); i < z; i++) {
-            final View child = getChildAt(i);
-            final HorizontalAppBarLayout.LayoutParams
-                    lp = (HorizontalAppBarLayout.LayoutParams) child.getLayoutParams();
-            final int childWidth = child.getMeasuredWidth();
-            final int flags = lp.mScrollFlags;
-
-            if ((flags & HorizontalAppBarLayout.LayoutParams.SCROLL_FLAG_SCROLL) != 0) {
-                // We're set to scroll so add the child's height
-                range += childWidth + lp.leftMargin + lp.rightMargin;
-
-                if ((flags & HorizontalAppBarLayout.LayoutParams.SCROLL_FLAG_EXIT_UNTIL_COLLAPSED) != 0) {
-                    // For a collapsing scroll, we to take the collapsed height into account.
-                    // We also break straight away since later views can't scroll beneath
-                    // us
-                    range -= ViewCompat.getMinimumWidth(child);
-                    break;
-                }
-            } else {
-                // As soon as a view doesn't have the scroll flag, we end the range calculation.
-                // This is because views below can not scroll under a fixed view.
-                break;
-            }
+    /**
+     * Returns whether the scroll interpolators of the children are sampled into lookup tables.
+     *
+     * @see #setScrollInterpolatorTablesEnabled(boolean)
+     */
+    public boolean isScrollInterpolatorTablesEnabled() {
+        return mScrollInterpolatorTablesEnabled;
+    }
+
+    /**
+     * Returns the interpolator to use when scrolling the child with the given layout params,
+     * which is its lookup table if enabled and built.
+     */
+    Interpolator getScrollInterpolator(HorizontalAppBarLayout.LayoutParams lp) {
+        if (mScrollInterpolatorTablesEnabled && lp.mScrollInterpolatorTable != null) {
+            return lp.mScrollInterpolatorTable;
         }
-        return mTotalScrollRange = Math.max(0, range - getLeftInset());
+        return lp.getScrollInterpolator();
+    }
+
+    /**
+     * Returns the scroll range of all children.
+     *
+     * @return the scroll range in px
+     */
+    public final int getTotalScrollRange() {
+        return getChildExtents().getTotalScrollRange();
     }
 
     boolean hasScrollableChildren() {
@@ -311,79 +409,14 @@ public class HorizontalAppBarLayout extends LinearLayout {
      * Return the scroll range when scrolling down from a nested pre-scroll.
      */
     int getDownNestedPreScrollRange() {
-        if (mDownPreScrollRange != INVALID_SCROLL_RANGE) {
-            // If we already have a valid value, return it
-            return mDownPreScrollRange;
-        }
-
-        int range = 0;
-        for (int i = getChildCount() - 1; i >= 0; i--) {
-            final View child = getChildAt(i);
-            final HorizontalAppBarLayout.LayoutParams
-                    lp = (HorizontalAppBarLayout.LayoutParams) child.getLayoutParams();
-            final int childWidth = child.getMeasuredWidth();
-            final int flags = lp.mScrollFlags;
-
-            if ((flags & HorizontalAppBarLayout.LayoutParams.FLAG_QUICK_RETURN) == HorizontalAppBarLayout.LayoutParams.FLAG_QUICK_RETURN) {
-                // First take the margin into account
-                range += lp.leftMargin + lp.rightMargin;
-                // The view has the quick return flag combination...
-                if ((flags & HorizontalAppBarLayout.LayoutParams.SCROLL_FLAG_ENTER_ALWAYS_COLLAPSED) != 0) {
-                    // If they're set to enter collapsed, use the minimum height
-                    range += ViewCompat.getMinimumWidth(child);
-                } else if ((flags & HorizontalAppBarLayout.LayoutParams.SCROLL_FLAG_EXIT_UNTIL_COLLAPSED) != 0) {
-                    // Only enter by the amount of the collapsed height
-                    range += childWidth - ViewCompat.getMinimumWidth(child);
-                } else {
-                    // Else use the full Width (minus the top inset)
-                    range += childWidth - getLeftInset();
-                }
-            } else if (range > 0) {
-                // If we've hit an non-quick return scrollable view, and we've already hit a
-                // quick return view, return now
-                break;
-            }
-        }
-        return mDownPreScrollRange = Math.max(0, range);
+        return getChildExtents().getDownNestedPreScrollRange();
     }
 
     /**
      * Return the scroll range when scrolling down from a nested scroll.
      */
     int getDownNestedScrollRange() {
-        if (mDownScrollRange != INVALID_SCROLL_RANGE) {
-            // If we already have a valid value, return it
-            return mDownScrollRange;
-        }
-
-        int range = 0;
-        for (int i = 0, z = getChildCount(); i < z; i++) {
-            final View child = getChildAt(i);
-            final HorizontalAppBarLayout.LayoutParams
-                    lp = (HorizontalAppBarLayout.LayoutParams) child.getLayoutParams();
-            int childWidth = child.getMeasuredWidth();
-            childWidth += lp.leftMargin + lp.rightMargin;
-
-            final int flags = lp.mScrollFlags;
-
-            if ((flags & HorizontalAppBarLayout.LayoutParams.SCROLL_FLAG_SCROLL) != 0) {
-                // We're set to scroll so add the child's Width
-                range += childWidth;
-
-                if ((flags & HorizontalAppBarLayout.LayoutParams.SCROLL_FLAG_EXIT_UNTIL_COLLAPSED) != 0) {
-                    // For a collapsing exit scroll, we to take the collapsed Width into account.
-                    // We also break the range straight away since later views can't scroll
-                    // beneath us
-                    range -= ViewCompat.getMinimumWidth(child) + getLeftInset();
-                    break;
-                }
-            } else {
-                // As soon as a view doesn't have the scroll flag, we end the range calculation.
-                // This is because views below can not scroll under a fixed view.
-                break;
-            }
-        }
-        return mDownScrollRange = Math.max(0, range);
+        return getChildExtents().getDownNestedScrollRange();
     }
 
     void dispatchOffsetUpdates(int offset) {
@@ -401,6 +434,41 @@ public class HorizontalAppBarLayout extends LinearLayout {
                 }
             }
         }
+
+        if (mFrameListeners != null && !mFrameListeners.isEmpty()) {
+            mPendingFrameOffset = offset;
+            if (!ViewCompat.isAttachedToWindow(this)) {
+                // There won't be a frame, so let the listeners know now
+                dispatchFrameOffsetUpdates(offset);
+            } else if (!mFrameOffsetDispatchScheduled) {
+                mFrameOffsetDispatchScheduled = true;
+                ViewCompat.postOnAnimation(this, mFrameOffsetDispatchRunnable);
+            }
+        }
+    }
+
+    private void dispatchFrameOffsetUpdates(int offset) {
+        if (mFrameListeners == null) {
+            return;
+        }
+        final int totalScrollRange = getTotalScrollRange();
+        final float collapseFraction = totalScrollRange > 0
+                ? MathUtils.clamp(-offset / (float) totalScrollRange, 0f, 1f)
+                : 0f;
+        if (offset == mLastFrameOffset && collapseFraction == mLastFrameCollapseFraction) {
+            // Nothing has changed since the last frame
+            return;
+        }
+        mLastFrameOffset = offset;
+        mLastFrameCollapseFraction = collapseFraction;
+
+        for (int i = 0, z = mFrameListeners.size(); i < z; i++) {
+            final HorizontalAppBarLayout.OnFrameOffsetChangedListener listener =
+                    mFrameListeners.get(i);
+            if (listener != null) {
+                listener.onOffsetChanged(this, offset, collapseFraction);
+            }
+        }
     }
 
     final int getMinimumWidthForVisibleOverlappingContent() {
@@ -503,6 +571,291 @@ public class HorizontalAppBarLayout extends LinearLayout {
         return insets;
     }
 
+    /**
+     * An immutable snapshot of the children's extents along the scrolling axis, taken once per
+     * layout pass. It holds everything the scroll range calculations and the {@link Behavior}
+     * need from the children, so that offset changes and snaps can find the child at an offset
+     * with a binary search rather than walking every child.
+     */
+    static final class ChildExtents {
+        private final int mChildCount;
+        private final int[] mStarts;
+        private final int[] mEnds;
+        private final int[] mScrollFlags;
+        private final int[] mMinWidths;
+        // mScrollRangePrefix[i] is the sum of the scroll ranges of the children before child i
+        private final int[] mScrollRangePrefix;
+        // The binary search relies on the children being laid out in ascending order, which
+        // they might not be (i.e. RTL or stale bounds of gone children)
+        private final boolean mOrdered;
+
+        private final int mTotalScrollRange;
+        private final int mDownPreScrollRange;
+        private final int mDownScrollRange;
+
+        private final int mLeftInset;
+        // The positions at which the layout counts as collapsed, from and to inclusive, for
+        // any direction and when entering. Only valid if mCollapsedRangesValid.
+        private final int[] mCollapsedRange = new int[2];
+        private final int[] mEnterCollapsedRange = new int[2];
+        private final boolean mCollapsedRangesValid;
+
+        // The extent of the child last found by hasChildAt(), from and to inclusive. Scrolling
+        // mostly stays within one child, which then needs no search. Starts out empty.
+        private int mLastFoundStart = 0;
+        private int mLastFoundEnd = -1;
+
+        ChildExtents(HorizontalAppBarLayout layout) {
+            final int count = layout.getChildCount();
+            final int leftInset = layout.getLeftInset();
+
+            mChildCount = count;
+            mStarts = new int[count];
+            mEnds = new int[count];
+            mScrollFlags = new int[count];
+            mMinWidths = new int[count];
+            mScrollRangePrefix = new int[count + 1];
+
+            boolean ordered = true;
+            int downPreScrollRange = 0;
+            boolean downPreScrollRangeDone = false;
+            for (int i = 0; i < count; i++) {
+                final View child = layout.getChildAt(i);
+                final HorizontalAppBarLayout.LayoutParams
+                        lp = (HorizontalAppBarLayout.LayoutParams) child.getLayoutParams();
+                final int flags = lp.mScrollFlags;
+                final int minWidth = ViewCompat.getMinimumWidth(child);
+                final int childWidth = child.getMeasuredWidth();
+
+                mStarts[i] = child.getLeft();
+                mEnds[i] = child.getRight();
+                mScrollFlags[i] = flags;
+                mMinWidths[i] = minWidth;
+                if (i > 0 && (mStarts[i] < mStarts[i - 1] || mEnds[i] < mEnds[i - 1])) {
+                    ordered = false;
+                }
+
+                int childScrollRange = 0;
+                if ((flags & HorizontalAppBarLayout.LayoutParams.SCROLL_FLAG_SCROLL) != 0) {
+                    // We're set to scroll so add the child's Width plus margin
+                    childScrollRange = childWidth + lp.leftMargin + lp.rightMargin;
+                    if ((flags & HorizontalAppBarLayout.LayoutParams.SCROLL_FLAG_EXIT_UNTIL_COLLAPSED) != 0) {
+                        // For a collapsing scroll, we to take the collapsed Width into account
+                        childScrollRange -= minWidth;
+                    }
+                }
+                mScrollRangePrefix[i + 1] = mScrollRangePrefix[i] + childScrollRange;
+            }
+            mOrdered = ordered;
+
+            // The scroll range ends after the leading run of scrolling children. Views after
+            // a fixed view can not scroll under it, and neither can views after one which
+            // exits until collapsed
+            int scrollEnd = 0;
+            boolean exitUntilCollapsed = false;
+            while (scrollEnd < count
+                    && (mScrollFlags[scrollEnd] & HorizontalAppBarLayout.LayoutParams.SCROLL_FLAG_SCROLL) != 0) {
+                exitUntilCollapsed = (mScrollFlags[scrollEnd]
+                        & HorizontalAppBarLayout.LayoutParams.SCROLL_FLAG_EXIT_UNTIL_COLLAPSED) != 0;
+                scrollEnd++;
+                if (exitUntilCollapsed) {
+                    break;
+                }
+            }
+            final int range = mScrollRangePrefix[scrollEnd];
+            mTotalScrollRange = Math.max(0, range - leftInset);
+            mDownScrollRange = Math.max(0, exitUntilCollapsed ? range - leftInset : range);
+
+            for (int i = count - 1; i >= 0 && !downPreScrollRangeDone; i--) {
+                final int flags = mScrollFlags[i];
+                if ((flags & HorizontalAppBarLayout.LayoutParams.FLAG_QUICK_RETURN)
+                        == HorizontalAppBarLayout.LayoutParams.FLAG_QUICK_RETURN) {
+                    final View child = layout.getChildAt(i);
+                    final HorizontalAppBarLayout.LayoutParams
+                            lp = (HorizontalAppBarLayout.LayoutParams) child.getLayoutParams();
+                    // First take the margin into account
+                    downPreScrollRange += lp.leftMargin + lp.rightMargin;
+                    // The view has the quick return flag combination...
+                    if ((flags & HorizontalAppBarLayout.LayoutParams.SCROLL_FLAG_ENTER_ALWAYS_COLLAPSED) != 0) {
+                        // If they're set to enter collapsed, use the minimum Width
+                        downPreScrollRange += mMinWidths[i];
+                    } else if ((flags & HorizontalAppBarLayout.LayoutParams.SCROLL_FLAG_EXIT_UNTIL_COLLAPSED) != 0) {
+                        // Only enter by the amount of the collapsed Width
+                        downPreScrollRange += child.getMeasuredWidth() - mMinWidths[i];
+                    } else {
+                        // Else use the full Width (minus the left inset)
+                        downPreScrollRange += child.getMeasuredWidth() - leftInset;
+                    }
+                } else if (downPreScrollRange > 0) {
+                    // If we've hit an non-quick return scrollable view, and we've already hit a
+                    // quick return view, we're done
+                    downPreScrollRangeDone = true;
+                }
+            }
+            mDownPreScrollRange = Math.max(0, downPreScrollRange);
+
+            mLeftInset = leftInset;
+            mCollapsedRangesValid = ordered
+                    && computeCollapsedRange(false, mCollapsedRange)
+                    && computeCollapsedRange(true, mEnterCollapsedRange);
+        }
+
+        /**
+         * Work out the single range of positions at which the layout counts as collapsed.
+         *
+         * @return false if the positions can't be described by a single range
+         */
+        private boolean computeCollapsedRange(boolean entering, int[] outRange) {
+            int from = Integer.MAX_VALUE;
+            int to = Integer.MIN_VALUE;
+            for (int i = 0; i < mChildCount; i++) {
+                if (!isCollapsible(mScrollFlags[i], entering)) {
+                    continue;
+                }
+                // The positions which find this child, and which show at most its minimum
+                // Width
+                int low = Math.max(mStarts[i], mEnds[i] - mMinWidths[i] - mLeftInset);
+                if (i > 0) {
+                    low = Math.max(low, mEnds[i - 1] + 1);
+                }
+                final int high = mEnds[i];
+                if (low > high) {
+                    continue;
+                }
+                if (from <= to && low > to + 1) {
+                    // A second, separate range
+                    return false;
+                }
+                if (from > to) {
+                    from = low;
+                }
+                to = high;
+            }
+            outRange[0] = from;
+            outRange[1] = to;
+            return true;
+        }
+
+        private static boolean isCollapsible(int flags, boolean entering) {
+            if ((flags & HorizontalAppBarLayout.LayoutParams.SCROLL_FLAG_SCROLL) == 0) {
+                return false;
+            }
+            if (entering && (flags & (HorizontalAppBarLayout.LayoutParams.SCROLL_FLAG_ENTER_ALWAYS
+                    | HorizontalAppBarLayout.LayoutParams.SCROLL_FLAG_ENTER_ALWAYS_COLLAPSED)) != 0) {
+                // We're set to enter always collapsed so we are only collapsed when
+                // being scrolled down, and in a collapsed offset
+                return true;
+            }
+            // If we're set to exit until collapsed, any offset which results in the
+            // minimum Width (or less) being shown is collapsed
+            return (flags & HorizontalAppBarLayout.LayoutParams.SCROLL_FLAG_EXIT_UNTIL_COLLAPSED) != 0;
+        }
+
+        /**
+         * Returns whether the layout counts as collapsed when scrolled to the given position.
+         * Positions between children are never collapsed, callers which should leave the state
+         * alone there have to check {@link #hasChildAt(int)} first.
+         *
+         * @param position the scroll position, i.e. the negated offset
+         * @param entering true if the layout is being scrolled back into view
+         */
+        boolean isCollapsedAt(int position, boolean entering) {
+            if (mCollapsedRangesValid) {
+                final int[] range = entering ? mEnterCollapsedRange : mCollapsedRange;
+                return position >= range[0] && position <= range[1];
+            }
+            final int index = findChildAt(position);
+            return index >= 0 && isCollapsible(mScrollFlags[index], entering)
+                    && position >= mEnds[index] - mMinWidths[index] - mLeftInset;
+        }
+
+        int getChildCount() {
+            return mChildCount;
+        }
+
+        /**
+         * Returns true if any child's extent contains the given position. Positions within the
+         * child found by the previous call are answered without searching.
+         */
+        boolean hasChildAt(int position) {
+            if (position >= mLastFoundStart && position <= mLastFoundEnd) {
+                return true;
+            }
+            final int index = findChildAt(position);
+            if (index < 0) {
+                return false;
+            }
+            mLastFoundStart = mStarts[index];
+            mLastFoundEnd = mEnds[index];
+            return true;
+        }
+
+        /**
+         * Returns the index of the first child whose extent contains the given position, or -1
+         * if there is none.
+         */
+        int findChildAt(int position) {
+            if (!mOrdered) {
+                for (int i = 0; i < mChildCount; i++) {
+                    if (mStarts[i] <= position && mEnds[i] >= position) {
+                        return i;
+                    }
+                }
+                return -1;
+            }
+
+            // Find the first child which ends at or after the position...
+            int low = 0;
+            int high = mChildCount - 1;
+            while (low <= high) {
+                final int mid = (low + high) >>> 1;
+                if (mEnds[mid] < position) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            // ...which contains it if it also starts at or before it
+            return low < mChildCount && mStarts[low] <= position ? low : -1;
+        }
+
+        int getStart(int index) {
+            return mStarts[index];
+        }
+
+        int getEnd(int index) {
+            return mEnds[index];
+        }
+
+        int getScrollFlags(int index) {
+            return mScrollFlags[index];
+        }
+
+        int getMinWidth(int index) {
+            return mMinWidths[index];
+        }
+
+        /**
+         * Returns how far the given child can scroll by itself, which is 0 unless it has the
+         * {@link LayoutParams#SCROLL_FLAG_SCROLL} flag.
+         */
+        int getChildScrollRange(int index) {
+            return mScrollRangePrefix[index + 1] - mScrollRangePrefix[index];
+        }
+
+        int getTotalScrollRange() {
+            return mTotalScrollRange;
+        }
+
+        int getDownNestedPreScrollRange() {
+            return mDownPreScrollRange;
+        }
+
+        int getDownNestedScrollRange() {
+            return mDownScrollRange;
+        }
+    }
+
     public static class LayoutParams extends LinearLayout.LayoutParams {
 
         /** @hide */
@@ -603,6 +956,8 @@ public class HorizontalAppBarLayout extends LinearLayout {
 
         int mScrollFlags = SCROLL_FLAG_SCROLL;
         Interpolator mScrollInterpolator;
+        // Sampled from mScrollInterpolator when laid out with lookup tables enabled
+        InterpolatorLookupTable mScrollInterpolatorTable;
 
         public LayoutParams(Context c, AttributeSet attrs) {
             super(c, attrs);
@@ -654,6 +1009,7 @@ public class HorizontalAppBarLayout extends LinearLayout {
             super(source);
             mScrollFlags = source.mScrollFlags;
             mScrollInterpolator = source.mScrollInterpolator;
+            mScrollInterpolatorTable = source.mScrollInterpolatorTable;
         }
 
         /**
@@ -693,7 +1049,10 @@ public class HorizontalAppBarLayout extends LinearLayout {
          * @see #getScrollInterpolator()
          */
         public void setScrollInterpolator(Interpolator interpolator) {
-            mScrollInterpolator = interpolator;
+            if (mScrollInterpolator != interpolator) {
+                mScrollInterpolator = interpolator;
+                mScrollInterpolatorTable = null;
+            }
         }
 
         /**
@@ -721,7 +1080,6 @@ public class HorizontalAppBarLayout extends LinearLayout {
      * scroll handling with offsetting.
      */
     public static class Behavior extends HorizontalHeaderBehavior<HorizontalAppBarLayout> {
-        private static final int MAX_OFFSET_ANIMATION_DURATION = 600; // ms
         private static final int INVALID_POSITION = -1;
 
         /**
@@ -741,7 +1099,17 @@ public class HorizontalAppBarLayout extends LinearLayout {
         }
 
         private int mOffsetDelta;
-        private ValueAnimator mOffsetAnimator;
+        private OffsetAnimator mOffsetAnimator;
+        private OffsetAnimator.UpdateListener mOffsetAnimatorListener;
+
+        // The offset velocity of the last nested fling, carried into the following snap
+        private float mNestedFlingVelocity;
+        // Whether we are animating to where a nested fling will snap to, in which case the
+        // fling's own nested scrolls don't move us
+        private boolean mNestedFlingSnapping;
+        // How much of the fling's scroll we would have consumed by following it, which we keep
+        // consuming while the animation moves us instead
+        private int mNestedFlingUnconsumed;
 
         private int mOffsetToChildIndexOnLayout = INVALID_POSITION;
         private boolean mOffsetToChildIndexOnLayoutIsMinWidth;
@@ -770,7 +1138,12 @@ public class HorizontalAppBarLayout extends LinearLayout {
                     && child.hasScrollableChildren()
                     && parent.getWidth() - directTargetChild.getWidth() <= child.getWidth();
 
-            if (started && mOffsetAnimator != null) {
+            if (type == ViewCompat.TYPE_TOUCH) {
+                mNestedFlingVelocity = 0f;
+                mNestedFlingSnapping = false;
+                mNestedFlingUnconsumed = 0;
+            }
+            if (started && mOffsetAnimator != null && !mNestedFlingSnapping) {
                 // Cancel any offset animation
                 mOffsetAnimator.cancel();
             }
@@ -784,6 +1157,19 @@ public class HorizontalAppBarLayout extends LinearLayout {
         @Override
         public void onNestedPreScroll(HorizontalCoordinatorLayout horizontalCoordinatorLayout, HorizontalAppBarLayout child,
                                       View target, int dx, int dy, int[] consumed, int type) {
+            if (type == ViewCompat.TYPE_NON_TOUCH && mNestedFlingSnapping) {
+                // We're already animating to where this fling ends. Still take the part of
+                // the fling we would have moved by, so that the scrolling view doesn't
+                // scroll by it too.
+                if (dx != 0 && (dx > 0) == (mNestedFlingUnconsumed > 0)) {
+                    final int taken = dx > 0
+                            ? Math.min(dx, mNestedFlingUnconsumed)
+                            : Math.max(dx, mNestedFlingUnconsumed);
+                    mNestedFlingUnconsumed -= taken;
+                    consumed[0] = taken;
+                }
+                return;
+            }
             if (dx != 0) {
                 int min, max;
                 if (dx < 0) {
@@ -805,6 +1191,10 @@ public class HorizontalAppBarLayout extends LinearLayout {
         public void onNestedScroll(HorizontalCoordinatorLayout horizontalCoordinatorLayout, HorizontalAppBarLayout child,
                                    View target, int dxConsumed, int dyConsumed, int dxUnconsumed, int dyUnconsumed,
                                    int type) {
+            if (type == ViewCompat.TYPE_NON_TOUCH && mNestedFlingSnapping) {
+                // We're already animating to where this fling ends
+                return;
+            }
             if (dxUnconsumed < 0) {
                 // If the scrolling view is scrolling down but not consuming, it's probably be at
                 // the top of it's content
@@ -813,12 +1203,51 @@ public class HorizontalAppBarLayout extends LinearLayout {
             }
         }
 
+        @Override
+        public boolean onNestedFling(HorizontalCoordinatorLayout horizontalCoordinatorLayout,
+                                     HorizontalAppBarLayout child, View target, float velocityX,
+                                     float velocityY, boolean consumed) {
+            // A positive fling velocity scrolls the content towards its end, which collapses
+            // us and so moves our offset the other way
+            mNestedFlingVelocity = -velocityX;
+
+            if (consumed && mNestedFlingVelocity != 0f) {
+                // The scrolling view is going to fling, and we would move along with it
+                // through its nested scrolls. Work out where that leaves us, which is only
+                // possible when expanding if the view can't scroll back any further itself.
+                final int offset = getLeftRightOffsetForScrollingSibling();
+                int finalOffset = INVALID_OFFSET;
+                if (mNestedFlingVelocity < 0) {
+                    finalOffset = predictFlingOffset(child, offset,
+                            -child.getTotalScrollRange(), 0, mNestedFlingVelocity);
+                } else if (!target.canScrollHorizontally(-1)) {
+                    finalOffset = predictFlingOffset(child, offset,
+                            -child.getDownNestedScrollRange(), 0, mNestedFlingVelocity);
+                }
+                if (finalOffset != INVALID_OFFSET) {
+                    mNestedFlingSnapping = flingToSnapOffset(horizontalCoordinatorLayout, child,
+                            finalOffset, mNestedFlingVelocity);
+                    // Scrolling by dx moves our offset by -dx
+                    mNestedFlingUnconsumed = mNestedFlingSnapping ? offset - finalOffset : 0;
+                }
+            }
+            return false;
+        }
+
         @Override
         public void onStopNestedScroll(HorizontalCoordinatorLayout horizontalCoordinatorLayout, HorizontalAppBarLayout abl,
                                        View target, int type) {
             if (type == ViewCompat.TYPE_TOUCH) {
-                // If we haven't been flung then let's see if the current view has been set to snap
-                snapToChildIfNeeded(horizontalCoordinatorLayout, abl);
+                if (!mNestedFlingSnapping) {
+                    // If we haven't been flung then let's see if the current view has been set
+                    // to snap
+                    snapToChildIfNeeded(horizontalCoordinatorLayout, abl);
+                }
+                mNestedFlingVelocity = 0f;
+            } else {
+                // The fling has finished, any snap animation can carry on by itself
+                mNestedFlingSnapping = false;
+                mNestedFlingUnconsumed = 0;
             }
 
             // Keep a reference to the previous nested scrolling child
@@ -834,102 +1263,142 @@ public class HorizontalAppBarLayout extends LinearLayout {
             mOnDragCallback = callback;
         }
 
-        private void animateOffsetTo(final HorizontalCoordinatorLayout horizontalCoordinatorLayout,
-                final HorizontalAppBarLayout child, final int offset, float velocity) {
-            final int distance = Math.abs(getLeftRightOffsetForScrollingSibling() - offset);
-
-            final int duration;
-            velocity = Math.abs(velocity);
-            if (velocity > 0) {
-                duration = 3 * Math.round(1000 * (distance / velocity));
-            } else {
-                final float distanceRatio = (float) distance / child.getWidth();
-                duration = (int) ((distanceRatio + 1) * 150);
+        /**
+         * Set the {@link OffsetAnimator} used to expand, collapse and snap the
+         * {@link HorizontalAppBarLayout}. Any running animation is cancelled.
+         *
+         * @param animator the animator to use, or {@code null} to use a
+         *                 {@link SpringOffsetAnimator}.
+         */
+        public void setOffsetAnimator(@Nullable OffsetAnimator animator) {
+            if (mOffsetAnimator == animator) {
+                return;
+            }
+            if (mOffsetAnimator != null) {
+                mOffsetAnimator.cancel();
+                mOffsetAnimator.setUpdateListener(null);
+            }
+            mOffsetAnimator = animator;
+            if (animator != null) {
+                animator.setUpdateListener(mOffsetAnimatorListener);
             }
-
-            animateOffsetWithDuration(horizontalCoordinatorLayout, child, offset, duration);
         }
 
-        private void animateOffsetWithDuration(final HorizontalCoordinatorLayout horizontalCoordinatorLayout,
-                final HorizontalAppBarLayout child, final int offset, final int duration) {
-            final int currentOffset = getLeftRightOffsetForScrollingSibling();
-            if (currentOffset == offset) {
-                if (mOffsetAnimator != null && mOffsetAnimator.isRunning()) {
-                    mOffsetAnimator.cancel();
-                }
-                return;
+        /**
+         * Returns the {@link OffsetAnimator} used to expand, collapse and snap the
+         * {@link HorizontalAppBarLayout}, creating the default one if needed.
+         */
+        @NonNull
+        public OffsetAnimator getOffsetAnimator() {
+            if (mOffsetAnimator == null) {
+                setOffsetAnimator(new SpringOffsetAnimator());
             }
+            return mOffsetAnimator;
+        }
 
-            if (mOffsetAnimator == null) {
-                mOffsetAnimator = new ValueAnimator();
-                mOffsetAnimator.setInterpolator(new DecelerateInterpolator());
-                mOffsetAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+        private void animateOffsetTo(final HorizontalCoordinatorLayout horizontalCoordinatorLayout,
+                final HorizontalAppBarLayout child, final int offset, float velocity) {
+            final OffsetAnimator animator = getOffsetAnimator();
+            if (mOffsetAnimatorListener == null) {
+                mOffsetAnimatorListener = new OffsetAnimator.UpdateListener() {
                     @Override
-                    public void onAnimationUpdate(ValueAnimator animation) {
+                    public void onOffsetUpdate(int value) {
+                        // A spring may overshoot, but the offset must stay within the range
                         setHeaderLeftRightOffset(horizontalCoordinatorLayout, child,
-                                (int) animation.getAnimatedValue());
+                                MathUtils.clamp(value, -child.getTotalScrollRange(), 0));
                     }
-                });
-            } else {
-                mOffsetAnimator.cancel();
+
+                    @Override
+                    public void onAnimationEnd() {
+                        // Whatever is left of a fling can move us again
+                        mNestedFlingSnapping = false;
+                        mNestedFlingUnconsumed = 0;
+                    }
+                };
+                animator.setUpdateListener(mOffsetAnimatorListener);
             }
 
-            mOffsetAnimator.setDuration(Math.min(duration, MAX_OFFSET_ANIMATION_DURATION));
-            mOffsetAnimator.setIntValues(currentOffset, offset);
-            mOffsetAnimator.start();
+            final int currentOffset = getLeftRightOffsetForScrollingSibling();
+            if (currentOffset == offset && !animator.isRunning()) {
+                return;
+            }
+            // If it's already running this retargets it, keeping its velocity
+            animator.animateTo(currentOffset, offset, velocity);
         }
 
-        private int getChildIndexOnOffset(HorizontalAppBarLayout abl, final int offset) {
-            for (int i = 0, count = abl.getChildCount(); i < count; i++) {
-                View child = abl.getChildAt(i);
-                if (child.getTop() <= -offset && child.getBottom() >= -offset) {
-                    return i;
-                }
+        private void snapToChildIfNeeded(HorizontalCoordinatorLayout horizontalCoordinatorLayout, HorizontalAppBarLayout abl) {
+            final int snapOffset = getSnapOffset(abl, getLeftRightOffsetForScrollingSibling());
+            if (snapOffset != INVALID_OFFSET) {
+                animateOffsetTo(horizontalCoordinatorLayout, abl, snapOffset, mNestedFlingVelocity);
             }
-            return -1;
         }
 
-        private void snapToChildIfNeeded(HorizontalCoordinatorLayout horizontalCoordinatorLayout, HorizontalAppBarLayout abl) {
-            final int offset = getLeftRightOffsetForScrollingSibling();
-            final int offsetChildIndex = getChildIndexOnOffset(abl, offset);
-            if (offsetChildIndex >= 0) {
-                final View offsetChild = abl.getChildAt(offsetChildIndex);
-                final HorizontalAppBarLayout.LayoutParams
-                        lp = (HorizontalAppBarLayout.LayoutParams) offsetChild.getLayoutParams();
-                final int flags = lp.getScrollFlags();
+        @Override
+        boolean onFlingStarting(HorizontalCoordinatorLayout parent, HorizontalAppBarLayout layout,
+                                int finalOffset, float velocityX) {
+            return flingToSnapOffset(parent, layout, finalOffset, velocityX);
+        }
 
-                if ((flags & HorizontalAppBarLayout.LayoutParams.FLAG_SNAP) == HorizontalAppBarLayout.LayoutParams.FLAG_SNAP) {
-                    // We're set the snap, so animate the offset to the nearest edge
-                    int snapTop = -offsetChild.getTop();
-                    int snapBottom = -offsetChild.getBottom();
+        /**
+         * If a fling which ends at the given offset would be followed by a snap, animate
+         * straight to where it snaps to instead, keeping the fling's velocity. This saves
+         * running a second animation once the fling has finished.
+         *
+         * @return true if the animation was started
+         */
+        private boolean flingToSnapOffset(HorizontalCoordinatorLayout horizontalCoordinatorLayout,
+                HorizontalAppBarLayout abl, int finalOffset, float velocity) {
+            final int snapOffset = getSnapOffset(abl, finalOffset);
+            if (snapOffset == INVALID_OFFSET) {
+                return false;
+            }
+            animateOffsetTo(horizontalCoordinatorLayout, abl, snapOffset, velocity);
+            return true;
+        }
 
-                    if (offsetChildIndex == abl.getChildCount() - 1) {
-                        // If this is the last child, we need to take the top inset into account
-                        snapBottom += abl.getLeftInset();
-                    }
+        /**
+         * Returns the offset to snap to from the given offset, or {@code INVALID_OFFSET} if
+         * the child at that offset isn't set to snap.
+         */
+        private int getSnapOffset(HorizontalAppBarLayout abl, int offset) {
+            final HorizontalAppBarLayout.ChildExtents extents = abl.getChildExtents();
+            final int offsetChildIndex = extents.findChildAt(-offset);
+            if (offsetChildIndex < 0) {
+                return INVALID_OFFSET;
+            }
+            final int flags = extents.getScrollFlags(offsetChildIndex);
+            if ((flags & HorizontalAppBarLayout.LayoutParams.FLAG_SNAP) != HorizontalAppBarLayout.LayoutParams.FLAG_SNAP) {
+                return INVALID_OFFSET;
+            }
 
-                    if (checkFlag(flags, HorizontalAppBarLayout.LayoutParams.SCROLL_FLAG_EXIT_UNTIL_COLLAPSED)) {
-                        // If the view is set only exit until it is collapsed, we'll abide by that
-                        snapBottom += ViewCompat.getMinimumWidth(offsetChild);
-                    } else if (checkFlag(flags, HorizontalAppBarLayout.LayoutParams.FLAG_QUICK_RETURN
-                            | HorizontalAppBarLayout.LayoutParams.SCROLL_FLAG_ENTER_ALWAYS)) {
-                        // If it's set to always enter collapsed, it actually has two states. We
-                        // select the state and then snap within the state
-                        final int seam = snapBottom + ViewCompat.getMinimumWidth(offsetChild);
-                        if (offset < seam) {
-                            snapTop = seam;
-                        } else {
-                            snapBottom = seam;
-                        }
-                    }
+            // We're set the snap, so find the nearest edge
+            int snapLeft = -extents.getStart(offsetChildIndex);
+            int snapRight = -extents.getEnd(offsetChildIndex);
 
-                    final int newOffset = offset < (snapBottom + snapTop) / 2
-                            ? snapBottom
-                            : snapTop;
-                    animateOffsetTo(horizontalCoordinatorLayout, abl,
-                            MathUtils.clamp(newOffset, -abl.getTotalScrollRange(), 0), 0);
+            if (offsetChildIndex == extents.getChildCount() - 1) {
+                // If this is the last child, we need to take the left inset into account
+                snapRight += abl.getLeftInset();
+            }
+
+            if (checkFlag(flags, HorizontalAppBarLayout.LayoutParams.SCROLL_FLAG_EXIT_UNTIL_COLLAPSED)) {
+                // If the view is set only exit until it is collapsed, we'll abide by that
+                snapRight += extents.getMinWidth(offsetChildIndex);
+            } else if (checkFlag(flags, HorizontalAppBarLayout.LayoutParams.FLAG_QUICK_RETURN
+                    | HorizontalAppBarLayout.LayoutParams.SCROLL_FLAG_ENTER_ALWAYS)) {
+                // If it's set to always enter collapsed, it actually has two states. We
+                // select the state and then snap within the state
+                final int seam = snapRight + extents.getMinWidth(offsetChildIndex);
+                if (offset < seam) {
+                    snapLeft = seam;
+                } else {
+                    snapRight = seam;
                 }
             }
+
+            final int newOffset = offset < (snapRight + snapLeft) / 2
+                    ? snapRight
+                    : snapLeft;
+            return MathUtils.clamp(newOffset, -abl.getTotalScrollRange(), 0);
         }
 
         private static boolean checkFlag(final int flags, final int check) {
@@ -1052,6 +1521,8 @@ public class HorizontalAppBarLayout extends LinearLayout {
         @Override
         int setHeaderLeftRightOffset(HorizontalCoordinatorLayout horizontalCoordinatorLayout,
                                      HorizontalAppBarLayout appBarLayout, int newOffset, int minOffset, int maxOffset) {
+            final boolean traced = HorizontalCoordinatorLayout.beginTraceSection(
+                    "HorizontalAppBarLayout.Behavior.setHeaderLeftRightOffset");
             final int curOffset = getLeftRightOffsetForScrollingSibling();
             int consumed = 0;
             // minOffset等于AppBarLayout的负的right，maxOffset等于0。//AppBarLayout滑动的距离如果超出了minOffset或者maxOffset，则直接返回0
@@ -1092,6 +1563,7 @@ public class HorizontalAppBarLayout extends LinearLayout {
                 mOffsetDelta = 0;
             }
 
+            HorizontalCoordinatorLayout.endTraceSection(traced);
             return consumed;
         }
 
@@ -1102,83 +1574,56 @@ public class HorizontalAppBarLayout extends LinearLayout {
 
         private int interpolateOffset(HorizontalAppBarLayout layout, final int offset) {
             final int absOffset = Math.abs(offset);
+            final HorizontalAppBarLayout.ChildExtents extents = layout.getChildExtents();
+            final int index = extents.findChildAt(absOffset);
 
-            for (int i = 0, z = layout.getChildCount(); i < z; i++) {
-                final View child = layout.getChildAt(i);
+            if (index >= 0) {
+                final View child = layout.getChildAt(index);
                 final HorizontalAppBarLayout.LayoutParams childLp = (HorizontalAppBarLayout.LayoutParams) child.getLayoutParams();
-                final Interpolator interpolator = childLp.getScrollInterpolator();
-
-                if (absOffset >= child.getTop() && absOffset <= child.getBottom()) {
-                    if (interpolator != null) {
-                        int childScrollableWidth = 0;
-                        final int flags = childLp.getScrollFlags();
-                        if ((flags & HorizontalAppBarLayout.LayoutParams.SCROLL_FLAG_SCROLL) != 0) {
-                            // We're set to scroll so add the child's Width plus margin
-                            childScrollableWidth += child.getWidth() + childLp.topMargin
-                                    + childLp.bottomMargin;
-
-                            if ((flags & HorizontalAppBarLayout.LayoutParams.SCROLL_FLAG_EXIT_UNTIL_COLLAPSED) != 0) {
-                                // For a collapsing scroll, we to take the collapsed Width
-                                // into account.
-                                childScrollableWidth -= ViewCompat.getMinimumWidth(child);
-                            }
-                        }
-
-                        if (ViewCompat.getFitsSystemWindows(child)) {
-                            childScrollableWidth -= layout.getLeftInset();
-                        }
-
-                        if (childScrollableWidth > 0) {
-                            final int offsetForView = absOffset - child.getTop();
-                            final int interpolatedDiff = Math.round(childScrollableWidth *
-                                    interpolator.getInterpolation(
-                                            offsetForView / (float) childScrollableWidth));
-
-                            return Integer.signum(offset) * (child.getTop() + interpolatedDiff);
-                        }
+                final Interpolator interpolator = layout.getScrollInterpolator(childLp);
+
+                if (interpolator != null) {
+                    int childScrollableWidth = extents.getChildScrollRange(index);
+
+                    if (ViewCompat.getFitsSystemWindows(child)) {
+                        childScrollableWidth -= layout.getLeftInset();
                     }
 
-                    // If we get to here then the view on the offset isn't suitable for interpolated
-                    // scrolling. So break out of the loop
-                    break;
+                    if (childScrollableWidth > 0) {
+                        final int childLeft = extents.getStart(index);
+                        final int offsetForView = absOffset - childLeft;
+                        final int interpolatedDiff = Math.round(childScrollableWidth *
+                                interpolator.getInterpolation(
+                                        offsetForView / (float) childScrollableWidth));
+
+                        return Integer.signum(offset) * (childLeft + interpolatedDiff);
+                    }
                 }
             }
 
+            // If we get to here then the view on the offset isn't suitable for interpolated
+            // scrolling
             return offset;
         }
 
         private void updateAppBarLayoutDrawableState(final HorizontalCoordinatorLayout parent,
                 final HorizontalAppBarLayout layout, final int offset, final int direction,
                 final boolean forceJump) {
-            final View child = getAppBarChildOnOffset(layout, offset);
-            if (child != null) {
-                final HorizontalAppBarLayout.LayoutParams childLp = (HorizontalAppBarLayout.LayoutParams) child.getLayoutParams();
-                final int flags = childLp.getScrollFlags();
-                boolean collapsed = false;
-
-                if ((flags & HorizontalAppBarLayout.LayoutParams.SCROLL_FLAG_SCROLL) != 0) {
-                    final int minWidth = ViewCompat.getMinimumWidth(child);
-
-                    if (direction > 0 && (flags & (HorizontalAppBarLayout.LayoutParams.SCROLL_FLAG_ENTER_ALWAYS
-                            | HorizontalAppBarLayout.LayoutParams.SCROLL_FLAG_ENTER_ALWAYS_COLLAPSED)) != 0) {
-                        // We're set to enter always collapsed so we are only collapsed when
-                        // being scrolled down, and in a collapsed offset
-                        collapsed = -offset >= child.getBottom() - minWidth - layout.getLeftInset();
-                    } else if ((flags & HorizontalAppBarLayout.LayoutParams.SCROLL_FLAG_EXIT_UNTIL_COLLAPSED) != 0) {
-                        // We're set to exit until collapsed, so any offset which results in
-                        // the minimum Width (or less) being shown is collapsed
-                        collapsed = -offset >= child.getBottom() - minWidth - layout.getLeftInset();
-                    }
-                }
-
-                final boolean changed = layout.setCollapsedState(collapsed);
-
-                if (Build.VERSION.SDK_INT >= 11 && (forceJump
-                        || (changed && shouldJumpElevationState(parent, layout)))) {
-                    // If the collapsed state changed, we may need to
-                    // jump to the current state if we have an overlapping view
-                    layout.jumpDrawablesToCurrentState();
-                }
+            final HorizontalAppBarLayout.ChildExtents extents = layout.getChildExtents();
+            if (!extents.hasChildAt(-offset)) {
+                // We're between children, which leaves the collapsed state as it is
+                return;
+            }
+            // The collapsed positions are worked out on layout, so this is just a range check
+            final boolean collapsed = extents.isCollapsedAt(-offset, direction > 0);
+            // ...and the drawable state is only refreshed when it actually changes
+            final boolean changed = layout.setCollapsedState(collapsed);
+
+            if (Build.VERSION.SDK_INT >= 11 && (forceJump
+                    || (changed && shouldJumpElevationState(parent, layout)))) {
+                // If the collapsed state changed, we may need to
+                // jump to the current state if we have an overlapping view
+                layout.jumpDrawablesToCurrentState();
             }
         }
 
@@ -1199,17 +1644,6 @@ public class HorizontalAppBarLayout extends LinearLayout {
             return false;
         }
 
-        private static View getAppBarChildOnOffset(final HorizontalAppBarLayout layout, final int offset) {
-            final int absOffset = Math.abs(offset);
-            for (int i = 0, z = layout.getChildCount(); i < z; i++) {
-                final View child = layout.getChildAt(i);
-                if (absOffset >= child.getTop() && absOffset <= child.getBottom()) {
-                    return child;
-                }
-            }
-            return null;
-        }
-
         @Override
         int getLeftRightOffsetForScrollingSibling() {
             return getLeftAndRightOffset() + mOffsetDelta;
@@ -1359,10 +1793,19 @@ public class HorizontalAppBarLayout extends LinearLayout {
                 // any vertical gap and overlap
                 final HorizontalAppBarLayout.Behavior
                         ablBehavior = (HorizontalAppBarLayout.Behavior) behavior;
-                ViewCompat.offsetLeftAndRight(child, (dependency.getRight() - child.getLeft())
+                // Use the drawn edges so that this also works when either view is offset
+                // through its translation
+                final int dx = (ViewOffsetHelper.getVisualRight(dependency)
+                        - ViewOffsetHelper.getVisualLeft(child))
                         + ablBehavior.mOffsetDelta
                         + getHorizontalLayoutGap()
-                        - getOverlapPixelsForOffset(dependency));
+                        - getOverlapPixelsForOffset(dependency);
+                if (isOffsetByTranslation()) {
+                    // The offset helper owns the translation, so that it isn't reset on layout
+                    setLeftAndRightOffset(getLeftAndRightOffset() + dx);
+                } else {
+                    ViewCompat.offsetLeftAndRight(child, dx);
+                }
             }
         }
 
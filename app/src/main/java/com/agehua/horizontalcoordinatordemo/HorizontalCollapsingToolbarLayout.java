@@ -35,10 +35,12 @@ import android.util.AttributeSet;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewParent;
+import android.view.ViewTreeObserver;
 import android.widget.FrameLayout;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.util.Arrays;
 
 import static android.support.annotation.RestrictTo.Scope.LIBRARY_GROUP;
 
@@ -68,6 +70,29 @@ public class HorizontalCollapsingToolbarLayout extends FrameLayout {
 
     WindowInsetsCompat mLastInsets;
 
+    // The pinned and parallax children and their offset helpers, gathered at layout so that
+    // applying a new offset only has to walk these arrays
+    View[] mCollapseChildren = new View[0];
+    ViewOffsetHelper[] mCollapseHelpers = new ViewOffsetHelper[0];
+    int[] mCollapseOffsets = new int[0];
+    int mCollapseChildCount;
+
+    private boolean mCollapseOffsetByTranslation;
+
+    // Whether mCurrentOffset has changed since the collapse offsets were last applied. They
+    // are applied once before the next frame is drawn, however often the offset changes.
+    boolean mCollapseOffsetsPending;
+    private final ViewTreeObserver.OnPreDrawListener mCollapseOffsetsPreDrawListener =
+            new ViewTreeObserver.OnPreDrawListener() {
+                @Override
+                public boolean onPreDraw() {
+                    if (mCollapseOffsetsPending) {
+                        applyCollapseOffsets();
+                    }
+                    return true;
+                }
+            };
+
     public HorizontalCollapsingToolbarLayout(Context context) {
         this(context, null);
     }
@@ -122,6 +147,7 @@ public class HorizontalCollapsingToolbarLayout extends FrameLayout {
                 mOnOffsetChangedListener = new OffsetUpdateListener();
             }
             ((HorizontalAppBarLayout) parent).addOnOffsetChangedListener(mOnOffsetChangedListener);
+            getViewTreeObserver().addOnPreDrawListener(mCollapseOffsetsPreDrawListener);
 
             // We're attached, so lets request an inset dispatch
             // 状态栏只有一个，只能被一个View消耗掉，当调用requestApplyInsets 就会重新分配一次WindowInsets，
@@ -137,6 +163,7 @@ public class HorizontalCollapsingToolbarLayout extends FrameLayout {
         if (mOnOffsetChangedListener != null && parent instanceof HorizontalAppBarLayout) {
             ((HorizontalAppBarLayout) parent).removeOnOffsetChangedListener(mOnOffsetChangedListener);
         }
+        getViewTreeObserver().removeOnPreDrawListener(mCollapseOffsetsPreDrawListener);
 
         super.onDetachedFromWindow();
     }
@@ -324,9 +351,35 @@ public class HorizontalCollapsingToolbarLayout extends FrameLayout {
 
         // Update our child view offset helpers. This needs to be done after the title has been
         // setup, so that any Toolbars are in their original position
-        for (int i = 0, z = getChildCount(); i < z; i++) {
-            getViewOffsetHelper(getChildAt(i)).onViewLayout();
+        final int childCount = getChildCount();
+        if (mCollapseChildren.length < childCount) {
+            mCollapseChildren = new View[childCount];
+            mCollapseHelpers = new ViewOffsetHelper[childCount];
+            mCollapseOffsets = new int[childCount];
+        } else {
+            Arrays.fill(mCollapseChildren, null);
+            Arrays.fill(mCollapseHelpers, null);
         }
+        mCollapseChildCount = 0;
+        for (int i = 0; i < childCount; i++) {
+            final View child = getChildAt(i);
+            final ViewOffsetHelper offsetHelper = getViewOffsetHelper(child);
+            offsetHelper.onViewLayout();
+
+            final int collapseMode = ((LayoutParams) child.getLayoutParams()).mCollapseMode;
+            if (collapseMode == LayoutParams.COLLAPSE_MODE_PIN
+                    || collapseMode == LayoutParams.COLLAPSE_MODE_PARALLAX) {
+                offsetHelper.setOffsetMode(getCollapseOffsetMode());
+                mCollapseChildren[mCollapseChildCount] = child;
+                mCollapseHelpers[mCollapseChildCount] = offsetHelper;
+                mCollapseChildCount++;
+            } else {
+                // Not (or no longer) pinned or parallax, keep any offset in the layout bounds
+                offsetHelper.setOffsetMode(ViewOffsetHelper.OFFSET_MODE_LAYOUT);
+            }
+        }
+        // Children with new LayoutParams start out without an offset
+        applyCollapseOffsets();
 
         // Finally, set our minimum height to enable proper AppBarLayout collapsing
         if (mToolbar != null) {
@@ -356,12 +409,11 @@ public class HorizontalCollapsingToolbarLayout extends FrameLayout {
     }
 
     static ViewOffsetHelper getViewOffsetHelper(View view) {
-        ViewOffsetHelper offsetHelper = (ViewOffsetHelper) view.getTag(R.id.view_offset_helper);
-        if (offsetHelper == null) {
-            offsetHelper = new ViewOffsetHelper(view);
-            view.setTag(R.id.view_offset_helper, offsetHelper);
+        final LayoutParams lp = (LayoutParams) view.getLayoutParams();
+        if (lp.mOffsetHelper == null) {
+            lp.mOffsetHelper = new ViewOffsetHelper(view);
         }
-        return offsetHelper;
+        return lp.mOffsetHelper;
     }
 
 
@@ -404,6 +456,45 @@ public class HorizontalCollapsingToolbarLayout extends FrameLayout {
 //        }
 //    }
 
+    /**
+     * Sets whether the pinned and parallax children are moved through their translationX rather
+     * than by offsetting their layout bounds.
+     *
+     * <p>The translation is a render property of the view, so a new offset only updates the
+     * transform which is applied when the view is drawn, without touching its bounds or
+     * recording it again. That keeps the work done on the UI thread for every offset change to
+     * a minimum. Combined with
+     * {@link HorizontalAppBarLayout.Behavior#setOffsetByTranslation(boolean) translating the app bar}
+     * itself, the whole collapse is expressed as translations. Anything else which animates the
+     * translationX of these children will be overwritten.</p>
+     *
+     * @param enabled true to move the pinned and parallax children by translation
+     */
+    public void setCollapseOffsetByTranslation(boolean enabled) {
+        if (mCollapseOffsetByTranslation != enabled) {
+            mCollapseOffsetByTranslation = enabled;
+            final int offsetMode = getCollapseOffsetMode();
+            for (int i = 0; i < mCollapseChildCount; i++) {
+                mCollapseHelpers[i].setOffsetMode(offsetMode);
+            }
+        }
+    }
+
+    /**
+     * Returns whether the pinned and parallax children are moved through their translationX.
+     *
+     * @see #setCollapseOffsetByTranslation(boolean)
+     */
+    public boolean isCollapseOffsetByTranslation() {
+        return mCollapseOffsetByTranslation;
+    }
+
+    private int getCollapseOffsetMode() {
+        return mCollapseOffsetByTranslation
+                ? ViewOffsetHelper.OFFSET_MODE_TRANSLATION
+                : ViewOffsetHelper.OFFSET_MODE_LAYOUT;
+    }
+
     /**
      * Set the duration used for scrim visibility animations.
      *
@@ -477,6 +568,11 @@ public class HorizontalCollapsingToolbarLayout extends FrameLayout {
         int mCollapseMode = COLLAPSE_MODE_OFF;
         float mParallaxMult = DEFAULT_PARALLAX_MULTIPLIER;
 
+        /**
+         * Moves the associated child for the collapse mode. Created on first use.
+         */
+        ViewOffsetHelper mOffsetHelper;
+
         public LayoutParams(Context c, AttributeSet attrs) {
             super(c, attrs);
 
@@ -516,6 +612,9 @@ public class HorizontalCollapsingToolbarLayout extends FrameLayout {
         /**
          * Set the collapse mode.
          *
+         * <p>Children are only picked up as pinned or parallax children when the parent is
+         * laid out, so the parent needs a layout pass when a child is switched on.</p>
+         *
          * @param collapseMode one of {@link #COLLAPSE_MODE_OFF}, {@link #COLLAPSE_MODE_PIN}
          *                     or {@link #COLLAPSE_MODE_PARALLAX}.
          */
@@ -567,6 +666,35 @@ public class HorizontalCollapsingToolbarLayout extends FrameLayout {
     }
 
 
+    /**
+     * Move the pinned and parallax children gathered during the last layout for
+     * {@link #mCurrentOffset}. All new offsets are worked out first, and each child is then
+     * moved at most once.
+     */
+    void applyCollapseOffsets() {
+        mCollapseOffsetsPending = false;
+        final int offset = mCurrentOffset;
+        for (int i = 0; i < mCollapseChildCount; i++) {
+            final View child = mCollapseChildren[i];
+            final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+            switch (lp.mCollapseMode) {
+                case LayoutParams.COLLAPSE_MODE_PIN:
+                    mCollapseOffsets[i] = MathUtils.clamp(-offset, 0,
+                            getMaxOffsetForPinChild(child));
+                    break;
+                case LayoutParams.COLLAPSE_MODE_PARALLAX:
+                    mCollapseOffsets[i] = Math.round(-offset * lp.mParallaxMult);
+                    break;
+                default:
+                    // The mode was turned off since the last layout, leave the child alone
+                    mCollapseOffsets[i] = mCollapseHelpers[i].getLeftAndRightOffset();
+                    break;
+            }
+        }
+        ViewOffsetHelper.setLeftAndRightOffsets(mCollapseHelpers, mCollapseOffsets,
+                mCollapseChildCount);
+    }
+
     private class OffsetUpdateListener implements HorizontalAppBarLayout.OnOffsetChangedListener {
         OffsetUpdateListener() {
         }
@@ -574,24 +702,11 @@ public class HorizontalCollapsingToolbarLayout extends FrameLayout {
         @Override
         public void onOffsetChanged(HorizontalAppBarLayout layout, int verticalOffset) {
             mCurrentOffset = verticalOffset;
-
-            final int insetLeft = mLastInsets != null ? mLastInsets.getSystemWindowInsetLeft() : 0;
-
-            for (int i = 0, z = getChildCount(); i < z; i++) {
-                final View child = getChildAt(i);
-                final LayoutParams lp = (LayoutParams) child.getLayoutParams();
-                final ViewOffsetHelper offsetHelper = getViewOffsetHelper(child);
-
-                switch (lp.mCollapseMode) {
-                    case LayoutParams.COLLAPSE_MODE_PIN:
-                        offsetHelper.setLeftAndRightOffset(MathUtils.clamp(
-                                -verticalOffset, 0, getMaxOffsetForPinChild(child)));
-                        break;
-                    case LayoutParams.COLLAPSE_MODE_PARALLAX:
-                        offsetHelper.setLeftAndRightOffset(
-                                Math.round(-verticalOffset * lp.mParallaxMult));
-                        break;
-                }
+            if (ViewCompat.isAttachedToWindow(HorizontalCollapsingToolbarLayout.this)) {
+                // Wait for the frame, in case the offset changes again before then
+                mCollapseOffsetsPending = true;
+            } else {
+                applyCollapseOffsets();
             }
         }
     }
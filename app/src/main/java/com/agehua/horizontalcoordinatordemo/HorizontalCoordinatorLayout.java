@@ -42,6 +42,7 @@ import android.support.annotation.VisibleForTesting;
 import android.support.v4.content.ContextCompat;
 import android.support.v4.graphics.drawable.DrawableCompat;
 import android.support.v4.math.MathUtils;
+import android.support.v4.os.TraceCompat;
 import android.support.v4.util.ObjectsCompat;
 import android.support.v4.util.Pools;
 import android.support.v4.view.AbsSavedState;
@@ -53,7 +54,6 @@ import android.support.v4.view.ViewCompat;
 import android.support.v4.view.ViewCompat.NestedScrollType;
 import android.support.v4.view.ViewCompat.ScrollAxis;
 import android.support.v4.view.WindowInsetsCompat;
-import android.support.v4.widget.DirectedAcyclicGraph;
 import android.support.v4.widget.ViewGroupUtils;
 import android.text.TextUtils;
 import android.util.AttributeSet;
@@ -70,11 +70,12 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static android.support.annotation.RestrictTo.Scope.LIBRARY_GROUP;
 
@@ -104,13 +105,64 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
             AttributeSet.class
     };
 
-    static final ThreadLocal<Map<String, Constructor<Behavior>>> sConstructors =
-            new ThreadLocal<>();
+    // Shared by every thread which inflates Behaviors, including async inflaters
+    static final Map<String, Constructor<Behavior>> sConstructors = new ConcurrentHashMap<>();
+
+    /**
+     * Factories for Behavior classes which can be created without reflection, keyed by the
+     * binary class name as used in {@code app:layout_behavior}.
+     */
+    static final Map<String, BehaviorFactory> sBehaviorFactories = new ConcurrentHashMap<>();
+
+    /**
+     * The {@link DefaultBehavior} resolved for each child view class, or
+     * {@link #NO_DEFAULT_BEHAVIOR} if neither the class nor its superclasses declare one.
+     */
+    static final Map<Class<?>, Class<? extends Behavior>> sDefaultBehaviors =
+            new ConcurrentHashMap<>();
+    // Behavior itself is abstract so it can never be a real default
+    private static final Class<? extends Behavior> NO_DEFAULT_BEHAVIOR = Behavior.class;
+
+    static {
+        sBehaviorFactories.put(HorizontalAppBarLayout.Behavior.class.getName(),
+                new BehaviorFactory() {
+                    @Override
+                    public Behavior newBehavior(Context context, AttributeSet attrs) {
+                        return attrs != null
+                                ? new HorizontalAppBarLayout.Behavior(context, attrs)
+                                : new HorizontalAppBarLayout.Behavior();
+                    }
+                });
+        sBehaviorFactories.put(HorizontalAppBarLayout.ScrollingViewBehavior.class.getName(),
+                new BehaviorFactory() {
+                    @Override
+                    public Behavior newBehavior(Context context, AttributeSet attrs) {
+                        return attrs != null
+                                ? new HorizontalAppBarLayout.ScrollingViewBehavior(context, attrs)
+                                : new HorizontalAppBarLayout.ScrollingViewBehavior();
+                    }
+                });
+    }
 
     static final int EVENT_PRE_DRAW = 0;
     static final int EVENT_NESTED_SCROLL = 1;
     static final int EVENT_VIEW_REMOVED = 2;
 
+    private static final String TRACE_PREFIX = "HorizontalCoordinatorLayout.";
+    // Indexed by the dispatch change event
+    private static final String[] TRACE_CHILD_VIEWS_CHANGED = {
+            TRACE_PREFIX + "onChildViewsChanged[preDraw]",
+            TRACE_PREFIX + "onChildViewsChanged[nestedScroll]",
+            TRACE_PREFIX + "onChildViewsChanged[viewRemoved]"
+    };
+    private static final String[] TRACE_PENDING_CHILD_VIEWS_CHANGED = {
+            TRACE_PREFIX + "onPendingChildViewsChanged[preDraw]",
+            TRACE_PREFIX + "onPendingChildViewsChanged[nestedScroll]",
+            TRACE_PREFIX + "onPendingChildViewsChanged[viewRemoved]"
+    };
+
+    private static boolean sTraceEnabled;
+
     /** @hide */
     @RestrictTo(LIBRARY_GROUP)
     @Retention(RetentionPolicy.SOURCE)
@@ -118,27 +170,65 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
     public @interface DispatchChangeEvent {}
 
     static final Comparator<View> TOP_SORTED_CHILDREN_COMPARATOR;
-    private static final Pools.Pool<Rect> sRectPool = new Pools.SynchronizedPool<>(12);
+
+    // Scratch rects are only ever used from the UI thread, so each layout keeps its own
+    // unsynchronized pool rather than contending on a shared one
+    private final Pools.Pool<Rect> mTempRectPool = new Pools.SimplePool<>(12);
 
     @NonNull
-    private static Rect acquireTempRect() {
-        Rect rect = sRectPool.acquire();
+    private Rect acquireTempRect() {
+        Rect rect = mTempRectPool.acquire();
         if (rect == null) {
             rect = new Rect();
         }
         return rect;
     }
 
-    private static void releaseTempRect(@NonNull Rect rect) {
+    private void releaseTempRect(@NonNull Rect rect) {
         rect.setEmpty();
-        sRectPool.release(rect);
+        mTempRectPool.release(rect);
     }
 
     private final List<View> mDependencySortedChildren = new ArrayList<>();
     private final DirectedAcyclicGraph<View> mChildDag = new DirectedAcyclicGraph<>();
-
-    private final List<View> mTempList1 = new ArrayList<>();
+    private boolean mChildDagInvalid = true;
+    private boolean mDependencySortedChildrenInvalid = true;
+    private boolean mHasChildDependencies;
+    private int mChildDagLayoutDirection = -1;
+
+    // Index based adjacency of mDependencySortedChildren. For the child at sorted position i,
+    // its anchor is at mSortedAnchorIndices[i] (or -1) and the positions of the children which
+    // depend on it are mSortedDependents[mSortedDependentsStart[i]] up to (excluding)
+    // mSortedDependents[mSortedDependentsStart[i + 1]], in ascending order.
+    // mSortedDependentsByBehavior tells which of those edges come from
+    // Behavior.layoutDependsOn(), rather than only from an anchor or inset dodging.
+    private int[] mSortedAnchorIndices = new int[0];
+    private int[] mSortedDependentsStart = new int[1];
+    private int[] mSortedDependents = new int[0];
+    private boolean[] mSortedDependentsByBehavior = new boolean[0];
+    private int[] mSortedInsetIndices = new int[0];
+    private int mSortedInsetCount;
+    private boolean[] mSortedPending = new boolean[0];
+    private int mFirstPendingSortedIndex = Integer.MAX_VALUE;
+    // Children which have to be measured in the current pass because a dependency was measured
+    private boolean[] mSortedRemeasure = new boolean[0];
+    // The insets and padding the cached child measurements were made with
+    private WindowInsetsCompat mMeasureCacheInsets;
+    private int mMeasureCachePaddingLeft;
+    private int mMeasureCachePaddingTop;
+    private int mMeasureCachePaddingRight;
+    private int mMeasureCachePaddingBottom;
+
+    // Children in the order touch events are offered to their Behaviors, along with the Z each
+    // child had when sorted
+    private final List<View> mTopSortedChildren = new ArrayList<>();
+    private float[] mTopSortedChildrenZ = new float[0];
+    private boolean mTopSortedChildrenInvalid = true;
+    private boolean mTopSortedChildrenCustomOrder;
     private final List<View> mTempDependenciesList = new ArrayList<>();
+    // Children whose Behavior accepted the current touch / non-touch nested scroll
+    private final List<View> mNestedScrollTouchChildren = new ArrayList<>();
+    private final List<View> mNestedScrollNonTouchChildren = new ArrayList<>();
     private final int[] mTempIntPair = new int[2];
     private Paint mScrimPaint;
 
@@ -154,6 +244,25 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
     private OnPreDrawListener mOnPreDrawListener;
     private boolean mNeedsPreDrawListener;
 
+    // Bumped whenever a child may have moved, so that the pre-draw pass can be skipped if not
+    private int mChildPositionGeneration;
+    private int mPreDrawPositionGeneration;
+
+    private BehaviorCallbackStats mBehaviorCallbackStats;
+
+    // Reused for every ACTION_CANCEL sent to Behaviors and super.onTouchEvent()
+    private MotionEvent mCancelEvent;
+
+    private boolean mCoalesceNestedScrollDispatch;
+    private boolean mNestedScrollDispatchScheduled;
+    private final Runnable mNestedScrollDispatchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mNestedScrollDispatchScheduled = false;
+            onPendingChildViewsChanged(EVENT_NESTED_SCROLL);
+        }
+    };
+
     private WindowInsetsCompat mLastInsets;
     private boolean mDrawStatusBarBackground;
     private Drawable mStatusBarBackground;
@@ -207,6 +316,7 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
         super.onAttachedToWindow();
         resetTouchBehaviors(false);
         if (mNeedsPreDrawListener) {
+            notifyChildPositionsChanged();
             if (mOnPreDrawListener == null) {
                 mOnPreDrawListener = new OnPreDrawListener();
             }
@@ -232,9 +342,113 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
         if (mNestedScrollingTarget != null) {
             onStopNestedScroll(mNestedScrollingTarget);
         }
+        if (mNestedScrollDispatchScheduled) {
+            removeCallbacks(mNestedScrollDispatchRunnable);
+            mNestedScrollDispatchScheduled = false;
+        }
+        if (mCancelEvent != null) {
+            mCancelEvent.recycle();
+            mCancelEvent = null;
+        }
         mIsAttachedToWindow = false;
     }
 
+    /**
+     * Set whether dependent view updates caused by nested scrolling are coalesced to once per
+     * frame.
+     *
+     * <p>By default every nested scroll and fling event immediately dispatches
+     * {@link Behavior#onDependentViewChanged(HorizontalCoordinatorLayout, View, View)} to the
+     * affected views. High rate input can deliver several of these events per display frame.
+     * When coalescing is enabled, the Behaviors handling the nested scroll still move their views
+     * and report consumed distances right away, but the dependent views are only updated once,
+     * on the next animation frame.</p>
+     *
+     * @param coalesce true to run at most one dependency pass per frame for nested scrolls
+     */
+    public void setNestedScrollDispatchCoalesced(boolean coalesce) {
+        if (mCoalesceNestedScrollDispatch != coalesce) {
+            mCoalesceNestedScrollDispatch = coalesce;
+            if (!coalesce) {
+                flushNestedScrollDispatch();
+            }
+        }
+    }
+
+    /**
+     * Returns whether dependent view updates caused by nested scrolling are coalesced to once
+     * per frame.
+     *
+     * @see #setNestedScrollDispatchCoalesced(boolean)
+     */
+    public boolean isNestedScrollDispatchCoalesced() {
+        return mCoalesceNestedScrollDispatch;
+    }
+
+    /**
+     * Set where the durations of the {@link Behavior} callbacks of this layout are recorded.
+     * Recording is off by default.
+     *
+     * @param stats the stats to record into, or null to stop recording
+     */
+    public void setBehaviorCallbackStats(@Nullable BehaviorCallbackStats stats) {
+        mBehaviorCallbackStats = stats;
+    }
+
+    /**
+     * Returns where the durations of the {@link Behavior} callbacks are recorded, or null if
+     * recording is off.
+     *
+     * @see #setBehaviorCallbackStats(BehaviorCallbackStats)
+     */
+    @Nullable
+    public BehaviorCallbackStats getBehaviorCallbackStats() {
+        return mBehaviorCallbackStats;
+    }
+
+    private static String getBehaviorTraceName(String callback, Behavior b) {
+        // Section names are limited to 127 characters
+        final String name = TRACE_PREFIX + callback + b.getClass().getName();
+        return name.length() > 127 ? name.substring(name.length() - 127) : name;
+    }
+
+    private long startBehaviorCallback() {
+        return mBehaviorCallbackStats != null ? System.nanoTime() : 0;
+    }
+
+    private void endBehaviorCallback(Behavior b, @BehaviorCallbackStats.Callback int callback,
+            long startNanos) {
+        final BehaviorCallbackStats stats = mBehaviorCallbackStats;
+        if (stats != null && startNanos != 0) {
+            stats.record(b.getClass(), callback, System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Dispatch the dependent view changes for the children which handled a nested scroll event,
+     * either now or on the next frame if coalescing is enabled.
+     */
+    private void dispatchNestedScrollChanged() {
+        if (mCoalesceNestedScrollDispatch && mIsAttachedToWindow) {
+            if (!mNestedScrollDispatchScheduled) {
+                mNestedScrollDispatchScheduled = true;
+                ViewCompat.postOnAnimation(this, mNestedScrollDispatchRunnable);
+            }
+        } else {
+            onPendingChildViewsChanged(EVENT_NESTED_SCROLL);
+        }
+    }
+
+    /**
+     * Run any nested scroll dependency pass which is waiting for the next frame right away.
+     */
+    private void flushNestedScrollDispatch() {
+        if (mNestedScrollDispatchScheduled) {
+            removeCallbacks(mNestedScrollDispatchRunnable);
+            mNestedScrollDispatchRunnable.run();
+        }
+    }
+
     /**
      * Set a drawable to draw in the insets area for the status bar.
      * Note that this will only be activated if this DrawerLayout fitsSystemWindows.
@@ -330,7 +544,10 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
             setWillNotDraw(!mDrawStatusBarBackground && getBackground() == null);
 
             // Now dispatch to the Behaviors
+            final boolean traced =
+                    beginTraceSection(TRACE_PREFIX + "dispatchApplyWindowInsetsToBehaviors");
             insets = dispatchApplyWindowInsetsToBehaviors(insets);
+            endTraceSection(traced);
             requestLayout();
         }
         return insets;
@@ -357,15 +574,11 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
             final LayoutParams lp = (LayoutParams) child.getLayoutParams();
             final Behavior b = lp.getBehavior();
             if (b != null) {
-                final long now = SystemClock.uptimeMillis();
-                final MotionEvent cancelEvent = MotionEvent.obtain(now, now,
-                        MotionEvent.ACTION_CANCEL, 0.0f, 0.0f, 0);
                 if (notifyOnInterceptTouchEvent) {
-                    b.onInterceptTouchEvent(this, child, cancelEvent);
+                    b.onInterceptTouchEvent(this, child, getCancelEvent());
                 } else {
-                    b.onTouchEvent(this, child, cancelEvent);
+                    b.onTouchEvent(this, child, getCancelEvent());
                 }
-                cancelEvent.recycle();
             }
         }
 
@@ -379,14 +592,39 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
     }
 
     /**
-     * Populate a list with the current child views, sorted such that the topmost views
-     * in z-order are at the front of the list. Useful for hit testing and event dispatch.
+     * Returns a fresh ACTION_CANCEL event with the current time. The previous one is recycled
+     * first, so it is normally handed straight back by the MotionEvent pool instead of a new
+     * event being created every time. Receivers must not keep or recycle it.
      */
-    private void getTopSortedChildren(List<View> out) {
-        out.clear();
+    private MotionEvent getCancelEvent() {
+        if (mCancelEvent != null) {
+            mCancelEvent.recycle();
+        }
+        final long now = SystemClock.uptimeMillis();
+        mCancelEvent = MotionEvent.obtain(now, now,
+                MotionEvent.ACTION_CANCEL, 0.0f, 0.0f, 0);
+        return mCancelEvent;
+    }
 
+    /**
+     * Returns the current child views, sorted such that the topmost views in z-order are at the
+     * front of the list. Useful for hit testing and event dispatch.
+     *
+     * <p>The list is cached across calls and is only sorted again once children have been
+     * added, removed or reordered, or when the Z of a child has changed. Do not modify the
+     * returned list.</p>
+     */
+    private List<View> getTopSortedChildren() {
+        final List<View> out = mTopSortedChildren;
         final boolean useCustomOrder = isChildrenDrawingOrderEnabled();
         final int childCount = getChildCount();
+        if (!mTopSortedChildrenInvalid && out.size() == childCount
+                && mTopSortedChildrenCustomOrder == useCustomOrder
+                && !hasTopSortedChildrenZChanged()) {
+            return out;
+        }
+
+        out.clear();
         for (int i = childCount - 1; i >= 0; i--) {
             final int childIndex = useCustomOrder ? getChildDrawingOrder(childCount, i) : i;
             final View child = getChildAt(childIndex);
@@ -396,18 +634,45 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
         if (TOP_SORTED_CHILDREN_COMPARATOR != null) {
             Collections.sort(out, TOP_SORTED_CHILDREN_COMPARATOR);
         }
+
+        if (mTopSortedChildrenZ.length < childCount) {
+            mTopSortedChildrenZ = new float[childCount];
+        }
+        for (int i = 0; i < childCount; i++) {
+            mTopSortedChildrenZ[i] = ViewCompat.getZ(out.get(i));
+        }
+        mTopSortedChildrenCustomOrder = useCustomOrder;
+        mTopSortedChildrenInvalid = false;
+        return out;
+    }
+
+    private boolean hasTopSortedChildrenZChanged() {
+        if (TOP_SORTED_CHILDREN_COMPARATOR == null) {
+            // Z does not affect the order
+            return false;
+        }
+        final List<View> children = mTopSortedChildren;
+        for (int i = 0, size = children.size(); i < size; i++) {
+            if (ViewCompat.getZ(children.get(i)) != mTopSortedChildrenZ[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void bringChildToFront(View child) {
+        super.bringChildToFront(child);
+        mTopSortedChildrenInvalid = true;
     }
 
     private boolean performIntercept(MotionEvent ev, final int type) {
         boolean intercepted = false;
         boolean newBlock = false;
 
-        MotionEvent cancelEvent = null;
-
         final int action = ev.getActionMasked();
 
-        final List<View> topmostChildList = mTempList1;
-        getTopSortedChildren(topmostChildList);
+        final List<View> topmostChildList = getTopSortedChildren();
 
         // Let topmost child views inspect first
         final int childCount = topmostChildList.size();
@@ -420,11 +685,7 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
                 // Cancel all behaviors beneath the one that intercepted.
                 // If the event is "down" then we don't have anything to cancel yet.
                 if (b != null) {
-                    if (cancelEvent == null) {
-                        final long now = SystemClock.uptimeMillis();
-                        cancelEvent = MotionEvent.obtain(now, now,
-                                MotionEvent.ACTION_CANCEL, 0.0f, 0.0f, 0);
-                    }
+                    final MotionEvent cancelEvent = getCancelEvent();
                     switch (type) {
                         case TYPE_ON_INTERCEPT:
                             b.onInterceptTouchEvent(this, child, cancelEvent);
@@ -439,9 +700,13 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
 
             if (!intercepted && b != null) {
                 switch (type) {
-                    case TYPE_ON_INTERCEPT:
+                    case TYPE_ON_INTERCEPT: {
+                        final long start = startBehaviorCallback();
                         intercepted = b.onInterceptTouchEvent(this, child, ev);
+                        endBehaviorCallback(b,
+                                BehaviorCallbackStats.CALLBACK_INTERCEPT_TOUCH_EVENT, start);
                         break;
+                    }
                     case TYPE_ON_TOUCH:
                         intercepted = b.onTouchEvent(this, child, ev);
                         break;
@@ -449,6 +714,8 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
                 if (intercepted) {
                     mBehaviorTouchView = child;
                 }
+                // The Behavior may have moved views while handling the event
+                notifyChildPositionsChanged();
             }
 
             // Don't keep going if we're not allowing interaction below this.
@@ -463,15 +730,11 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
             }
         }
 
-        topmostChildList.clear();
-
         return intercepted;
     }
 
     @Override
     public boolean onInterceptTouchEvent(MotionEvent ev) {
-        MotionEvent cancelEvent = null;
-
         final int action = ev.getActionMasked();
 
         // Make sure we reset in case we had missed a previous important event.
@@ -481,10 +744,6 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
 
         final boolean intercepted = performIntercept(ev, TYPE_ON_INTERCEPT);
 
-        if (cancelEvent != null) {
-            cancelEvent.recycle();
-        }
-
         if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
             resetTouchBehaviors(true);
         }
@@ -496,7 +755,6 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
     public boolean onTouchEvent(MotionEvent ev) {
         boolean handled = false;
         boolean cancelSuper = false;
-        MotionEvent cancelEvent = null;
 
         final int action = ev.getActionMasked();
 
@@ -507,6 +765,7 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
             final Behavior b = lp.getBehavior();
             if (b != null) {
                 handled = b.onTouchEvent(this, mBehaviorTouchView, ev);
+                notifyChildPositionsChanged();
             }
         }
 
@@ -514,22 +773,13 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
         if (mBehaviorTouchView == null) {
             handled |= super.onTouchEvent(ev);
         } else if (cancelSuper) {
-            if (cancelEvent == null) {
-                final long now = SystemClock.uptimeMillis();
-                cancelEvent = MotionEvent.obtain(now, now,
-                        MotionEvent.ACTION_CANCEL, 0.0f, 0.0f, 0);
-            }
-            super.onTouchEvent(cancelEvent);
+            super.onTouchEvent(getCancelEvent());
         }
 
         if (!handled && action == MotionEvent.ACTION_DOWN) {
 
         }
 
-        if (cancelEvent != null) {
-            cancelEvent.recycle();
-        }
-
         if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
             resetTouchBehaviors(false);
         }
@@ -560,49 +810,141 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
         return mKeylines[index];
     }
 
+    /**
+     * Set whether coordinator layouts emit {@link TraceCompat} sections around measuring,
+     * laying out and dispatching to their Behaviors. This is off by default.
+     *
+     * @param enabled true to emit trace sections
+     */
+    public static void setTraceEnabled(boolean enabled) {
+        sTraceEnabled = enabled;
+    }
+
+    /**
+     * Returns whether coordinator layouts emit trace sections.
+     *
+     * @see #setTraceEnabled(boolean)
+     */
+    public static boolean isTraceEnabled() {
+        return sTraceEnabled;
+    }
+
+    /**
+     * Begin a trace section if tracing is enabled.
+     *
+     * @return whether a section was begun, to be passed to {@link #endTraceSection(boolean)}
+     */
+    static boolean beginTraceSection(String sectionName) {
+        if (sTraceEnabled) {
+            TraceCompat.beginSection(sectionName);
+            return true;
+        }
+        return false;
+    }
+
+    static void endTraceSection(boolean begun) {
+        if (begun) {
+            TraceCompat.endSection();
+        }
+    }
+
+    /**
+     * Register a factory which creates instances of the given {@link Behavior} class, so that
+     * inflating it through {@code app:layout_behavior} or {@link DefaultBehavior} does not need
+     * to look up its constructor through reflection.
+     *
+     * @param behaviorClass the Behavior class the factory creates
+     * @param factory the factory to use, or null to go back to reflection for this class
+     */
+    public static void registerBehaviorFactory(@NonNull Class<? extends Behavior> behaviorClass,
+            @Nullable BehaviorFactory factory) {
+        if (factory != null) {
+            sBehaviorFactories.put(behaviorClass.getName(), factory);
+        } else {
+            sBehaviorFactories.remove(behaviorClass.getName());
+        }
+    }
+
+    /**
+     * Load the classes and constructors of the given {@link Behavior}s ahead of time, so that
+     * inflating them later does not need to. This is safe to call from a background thread, for
+     * example during application startup.
+     *
+     * @param context the Context whose class loader and package name should be used
+     * @param names the Behavior class names, in the same format as {@code app:layout_behavior}
+     */
+    public static void prewarmBehaviors(@NonNull Context context, @NonNull String... names) {
+        for (String name : names) {
+            if (TextUtils.isEmpty(name)) {
+                continue;
+            }
+            final String fullName = resolveBehaviorClassName(context, name);
+            if (sBehaviorFactories.containsKey(fullName)) {
+                // Nothing to load, the factory will be used
+                continue;
+            }
+            try {
+                getBehaviorConstructor(context, fullName);
+            } catch (Exception e) {
+                Log.w(TAG, "Could not prewarm Behavior subclass " + fullName, e);
+            }
+        }
+    }
+
     static Behavior parseBehavior(Context context, AttributeSet attrs, String name) {
         if (TextUtils.isEmpty(name)) {
             return null;
         }
 
-        final String fullName;
+        final String fullName = resolveBehaviorClassName(context, name);
+
+        final BehaviorFactory factory = sBehaviorFactories.get(fullName);
+        if (factory != null) {
+            return factory.newBehavior(context, attrs);
+        }
+
+        try {
+            return getBehaviorConstructor(context, fullName).newInstance(context, attrs);
+        } catch (Exception e) {
+            throw new RuntimeException("Could not inflate Behavior subclass " + fullName, e);
+        }
+    }
+
+    private static String resolveBehaviorClassName(Context context, String name) {
         if (name.startsWith(".")) {
             // Relative to the app package. Prepend the app package name.
-            fullName = context.getPackageName() + name;
+            return context.getPackageName() + name;
         } else if (name.indexOf('.') >= 0) {
             // Fully qualified package name.
-            fullName = name;
+            return name;
         } else {
             // Assume stock behavior in this package (if we have one)
-            fullName = !TextUtils.isEmpty(WIDGET_PACKAGE_NAME)
+            return !TextUtils.isEmpty(WIDGET_PACKAGE_NAME)
                     ? (WIDGET_PACKAGE_NAME + '.' + name)
                     : name;
         }
+    }
 
-        try {
-            Map<String, Constructor<Behavior>> constructors = sConstructors.get();
-            if (constructors == null) {
-                constructors = new HashMap<>();
-                sConstructors.set(constructors);
-            }
-            Constructor<Behavior> c = constructors.get(fullName);
-            if (c == null) {
-                final Class<Behavior> clazz = (Class<Behavior>) context.getClassLoader()
-                        .loadClass(fullName);
-                c = clazz.getConstructor(CONSTRUCTOR_PARAMS);
-                c.setAccessible(true);
-                constructors.put(fullName, c);
-            }
-            return c.newInstance(context, attrs);
-        } catch (Exception e) {
-            throw new RuntimeException("Could not inflate Behavior subclass " + fullName, e);
-        }
+    @SuppressWarnings("unchecked")
+    private static Constructor<Behavior> getBehaviorConstructor(Context context, String fullName)
+            throws ClassNotFoundException, NoSuchMethodException {
+        Constructor<Behavior> c = sConstructors.get(fullName);
+        if (c == null) {
+            final Class<Behavior> clazz = (Class<Behavior>) context.getClassLoader()
+                    .loadClass(fullName);
+            c = clazz.getConstructor(CONSTRUCTOR_PARAMS);
+            c.setAccessible(true);
+            // Two threads may race to resolve the same constructor, either result is fine
+            sConstructors.put(fullName, c);
+        }
+        return c;
     }
 
     LayoutParams getResolvedLayoutParams(View child) {
         final LayoutParams result = (LayoutParams) child.getLayoutParams();
         if (!result.mBehaviorResolved) {
             if (child instanceof AttachedBehavior) {
+                // The view hands us its behavior directly, no need to look at annotations
                 Behavior attachedBehavior = ((AttachedBehavior) child).getBehavior();
                 if (attachedBehavior == null) {
                     Log.e(TAG, "Attached behavior class is null");
@@ -611,19 +953,17 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
                 result.mBehaviorResolved = true;
             } else {
                 // The deprecated path that looks up the attached behavior based on annotation
-                Class<?> childClass = child.getClass();
-                DefaultBehavior defaultBehavior = null;
-                while (childClass != null
-                        && (defaultBehavior = childClass.getAnnotation(DefaultBehavior.class))
-                                == null) {
-                    childClass = childClass.getSuperclass();
-                }
-                if (defaultBehavior != null) {
+                final Class<? extends Behavior> behaviorClass =
+                        getDefaultBehaviorClass(child.getClass());
+                if (behaviorClass != null) {
+                    final BehaviorFactory factory =
+                            sBehaviorFactories.get(behaviorClass.getName());
                     try {
-                        result.setBehavior(
-                                defaultBehavior.value().getDeclaredConstructor().newInstance());
+                        result.setBehavior(factory != null
+                                ? factory.newBehavior(child.getContext(), null)
+                                : behaviorClass.getDeclaredConstructor().newInstance());
                     } catch (Exception e) {
-                        Log.e(TAG, "Default behavior class " + defaultBehavior.value().getName()
+                        Log.e(TAG, "Default behavior class " + behaviorClass.getName()
                                         + " could not be instantiated. Did you forget"
                                         + " a default constructor?", e);
                     }
@@ -634,8 +974,183 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
         return result;
     }
 
+    /**
+     * Returns the Behavior class declared through {@link DefaultBehavior} on the given view
+     * class or its closest superclass, or null if there is none. The result is cached per
+     * view class, so the class hierarchy is only walked once.
+     */
+    @Nullable
+    private static Class<? extends Behavior> getDefaultBehaviorClass(Class<?> viewClass) {
+        Class<? extends Behavior> behaviorClass = sDefaultBehaviors.get(viewClass);
+        if (behaviorClass == null) {
+            DefaultBehavior defaultBehavior = null;
+            Class<?> childClass = viewClass;
+            while (childClass != null
+                    && (defaultBehavior = childClass.getAnnotation(DefaultBehavior.class))
+                            == null) {
+                childClass = childClass.getSuperclass();
+            }
+            behaviorClass = defaultBehavior != null ? defaultBehavior.value() : NO_DEFAULT_BEHAVIOR;
+            sDefaultBehaviors.put(viewClass, behaviorClass);
+        }
+        return behaviorClass != NO_DEFAULT_BEHAVIOR ? behaviorClass : null;
+    }
+
+    /**
+     * Bring {@link #mChildDag} and {@link #mDependencySortedChildren} up to date.
+     *
+     * <p>The graph is kept across layout passes. Only children which have been added or whose
+     * {@link LayoutParams} changed in a way that affects dependencies since the last pass have
+     * their edges recomputed, and the cached sort order is reused if nothing changed at all.</p>
+     */
     private void prepareChildren() {
-        mDependencySortedChildren.clear();
+        final boolean traced = beginTraceSection(TRACE_PREFIX + "prepareChildren");
+        final int layoutDirection = ViewCompat.getLayoutDirection(this);
+        if (layoutDirection != mChildDagLayoutDirection) {
+            // Inset edges are resolved against the layout direction, so any edge may change
+            mChildDagLayoutDirection = layoutDirection;
+            mChildDagInvalid = true;
+        }
+
+        final int count = getChildCount();
+        if (!mChildDagInvalid) {
+            for (int i = 0; i < count; i++) {
+                final View view = getChildAt(i);
+                final LayoutParams lp = getResolvedLayoutParams(view);
+                final View lastAnchorDirectChild = lp.mAnchorDirectChild;
+                lp.findAnchorView(this, view);
+
+                if (!mChildDag.contains(view)) {
+                    mChildDag.addNode(view);
+                    lp.mDependenciesDirty = true;
+                } else if (lp.mAnchorDirectChild != lastAnchorDirectChild) {
+                    // The anchor has moved to another direct child
+                    lp.mDependenciesDirty = true;
+                }
+            }
+            if (mChildDag.size() != count) {
+                // Children were detached without us being told, so start again from scratch
+                mChildDagInvalid = true;
+            }
+        }
+
+        if (mChildDagInvalid) {
+            rebuildChildDag();
+        } else {
+            for (int i = 0; i < count; i++) {
+                final View view = getChildAt(i);
+                final LayoutParams lp = (LayoutParams) view.getLayoutParams();
+                if (lp.mDependenciesDirty) {
+                    updateChildDependencies(view);
+                }
+            }
+        }
+
+        if (mDependencySortedChildrenInvalid) {
+            mDependencySortedChildren.clear();
+            // Finally add the sorted graph list to our list
+            mDependencySortedChildren.addAll(mChildDag.getSortedList());
+            // We also need to reverse the result since we want the start of the list to contain
+            // Views which have no dependencies, then dependent views after that
+            Collections.reverse(mDependencySortedChildren);
+
+            buildSortedAdjacency();
+            mDependencySortedChildrenInvalid = false;
+        }
+        endTraceSection(traced);
+    }
+
+    /**
+     * Build the index based adjacency arrays for {@link #mDependencySortedChildren} from the
+     * dependency graph, so that dependency dispatch can read plain arrays rather than walking
+     * lists and calling back into Behaviors on every frame.
+     *
+     * <p>This must be called whenever the contents or order of the sorted children change.</p>
+     */
+    private void buildSortedAdjacency() {
+        final int count = mDependencySortedChildren.size();
+        for (int i = 0; i < count; i++) {
+            final View child = mDependencySortedChildren.get(i);
+            ((LayoutParams) child.getLayoutParams()).mDependencySortedIndex = i;
+        }
+
+        if (mSortedAnchorIndices.length < count) {
+            mSortedAnchorIndices = new int[count];
+            mSortedPending = new boolean[count];
+            mSortedInsetIndices = new int[count];
+        }
+        if (mSortedDependentsStart.length < count + 1) {
+            mSortedDependentsStart = new int[count + 1];
+        }
+
+        int edgeCount = 0;
+        int insetCount = 0;
+        for (int i = 0; i < count; i++) {
+            final View child = mDependencySortedChildren.get(i);
+            final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+
+            mSortedAnchorIndices[i] = getSortedIndex(lp.mAnchorDirectChild);
+            mSortedPending[i] = false;
+            if (lp.insetEdge != Gravity.NO_GRAVITY) {
+                mSortedInsetIndices[insetCount++] = i;
+            }
+
+            mSortedDependentsStart[i] = edgeCount;
+            final List<View> dependents = mChildDag.getIncomingEdges(child);
+            if (dependents != null) {
+                for (int j = 0, size = dependents.size(); j < size; j++) {
+                    final View dependent = dependents.get(j);
+                    final int dependentIndex = getSortedIndex(dependent);
+                    if (dependentIndex < 0) {
+                        continue;
+                    }
+                    if (edgeCount == mSortedDependents.length) {
+                        final int newLength = Math.max(8, edgeCount * 2);
+                        int[] indices = new int[newLength];
+                        boolean[] byBehavior = new boolean[newLength];
+                        System.arraycopy(mSortedDependents, 0, indices, 0, edgeCount);
+                        System.arraycopy(mSortedDependentsByBehavior, 0, byBehavior, 0,
+                                edgeCount);
+                        mSortedDependents = indices;
+                        mSortedDependentsByBehavior = byBehavior;
+                    }
+                    final Behavior b = ((LayoutParams) dependent.getLayoutParams()).getBehavior();
+                    // Insert in sorted position so that dispatch happens in dependency order
+                    int k = edgeCount++;
+                    while (k > mSortedDependentsStart[i] && mSortedDependents[k - 1] > dependentIndex) {
+                        mSortedDependents[k] = mSortedDependents[k - 1];
+                        mSortedDependentsByBehavior[k] = mSortedDependentsByBehavior[k - 1];
+                        k--;
+                    }
+                    mSortedDependents[k] = dependentIndex;
+                    mSortedDependentsByBehavior[k] = b != null
+                            && b.layoutDependsOn(this, dependent, child);
+                }
+            }
+        }
+        mSortedDependentsStart[count] = edgeCount;
+        mSortedInsetCount = insetCount;
+        mFirstPendingSortedIndex = Integer.MAX_VALUE;
+        mHasChildDependencies = edgeCount > 0;
+    }
+
+    /**
+     * Returns the index of the given view within {@link #mDependencySortedChildren}, or -1 if
+     * it is not part of it.
+     */
+    private int getSortedIndex(View child) {
+        if (child == null) {
+            return -1;
+        }
+        final int index = ((LayoutParams) child.getLayoutParams()).mDependencySortedIndex;
+        return index >= 0 && index < mDependencySortedChildren.size()
+                && mDependencySortedChildren.get(index) == child ? index : -1;
+    }
+
+    /**
+     * Rebuild the whole dependency graph, checking every ordered pair of children.
+     */
+    private void rebuildChildDag() {
         mChildDag.clear();
 
         for (int i = 0, count = getChildCount(); i < count; i++) {
@@ -661,13 +1176,54 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
                     mChildDag.addEdge(other, view);
                 }
             }
+            lp.mDependenciesDirty = false;
         }
 
-        // Finally add the sorted graph list to our list
-        mDependencySortedChildren.addAll(mChildDag.getSortedList());
-        // We also need to reverse the result since we want the start of the list to contain
-        // Views which have no dependencies, then dependent views after that
-        Collections.reverse(mDependencySortedChildren);
+        mChildDagInvalid = false;
+        mDependencySortedChildrenInvalid = true;
+    }
+
+    /**
+     * Recompute the edges between the given child and every other child, in both directions.
+     * All children must already be nodes of the graph with their anchors resolved.
+     */
+    private void updateChildDependencies(View child) {
+        final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+        mChildDag.removeIncomingEdges(child);
+        mChildDag.removeOutgoingEdges(child);
+
+        for (int i = 0, count = getChildCount(); i < count; i++) {
+            final View other = getChildAt(i);
+            if (other == child) {
+                continue;
+            }
+            if (lp.dependsOn(this, child, other)) {
+                mChildDag.addEdge(other, child);
+            }
+            final LayoutParams otherLp = (LayoutParams) other.getLayoutParams();
+            if (otherLp.dependsOn(this, other, child)) {
+                mChildDag.addEdge(child, other);
+            }
+        }
+
+        lp.mDependenciesDirty = false;
+        mDependencySortedChildrenInvalid = true;
+    }
+
+    /**
+     * Mark the child dependency graph as stale so that it is completely rebuilt on the next
+     * measure pass.
+     *
+     * <p>Dependencies are normally tracked automatically as children are added or removed and
+     * when {@link LayoutParams#setBehavior(Behavior)} or {@link LayoutParams#setAnchorId(int)}
+     * are called. Call this method after changing anything else that affects
+     * {@link Behavior#layoutDependsOn(HorizontalCoordinatorLayout, View, View)} or after
+     * modifying {@link LayoutParams#insetEdge} or {@link LayoutParams#dodgeInsetEdges}
+     * directly.</p>
+     */
+    public void invalidateDependencies() {
+        mChildDagInvalid = true;
+        requestLayout();
     }
 
     /**
@@ -721,17 +1277,39 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
         int childState = 0;
 
         final boolean applyInsets = mLastInsets != null && ViewCompat.getFitsSystemWindows(this);
+        // Children are measured within our padding, so none of the cached measurements hold
+        // once it changes
+        final boolean parentChanged = mMeasureCacheInsets != mLastInsets
+                || mMeasureCachePaddingLeft != paddingLeft
+                || mMeasureCachePaddingTop != paddingTop
+                || mMeasureCachePaddingRight != paddingRight
+                || mMeasureCachePaddingBottom != paddingBottom;
+        mMeasureCacheInsets = mLastInsets;
+        mMeasureCachePaddingLeft = paddingLeft;
+        mMeasureCachePaddingTop = paddingTop;
+        mMeasureCachePaddingRight = paddingRight;
+        mMeasureCachePaddingBottom = paddingBottom;
 
         final int childCount = mDependencySortedChildren.size();
+        if (mSortedRemeasure.length < childCount) {
+            mSortedRemeasure = new boolean[childCount];
+        } else {
+            Arrays.fill(mSortedRemeasure, 0, childCount, false);
+        }
+
         for (int i = 0; i < childCount; i++) {
             final View child = mDependencySortedChildren.get(i);
+            final LayoutParams lp = (LayoutParams) child.getLayoutParams();
             if (child.getVisibility() == GONE) {
                 // If the child is GONE, skip...
+                if (lp.mMeasureCacheValid) {
+                    // It was measured before, so anything depending on it may need to change
+                    lp.mMeasureCacheValid = false;
+                    markDependentsForRemeasure(i);
+                }
                 continue;
             }
 
-            final LayoutParams lp = (LayoutParams) child.getLayoutParams();
-
             int keylineWidthUsed = 0;
             if (lp.keyline >= 0 && widthMode != MeasureSpec.UNSPECIFIED) {
                 final int keylinePos = getKeyline(lp.keyline);
@@ -763,12 +1341,30 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
                         heightSize - vertInsets, heightMode);
             }
 
-            final Behavior b = lp.getBehavior();
-            if (b == null || !b.onMeasureChild(this, child, childWidthMeasureSpec, keylineWidthUsed,
-                    childHeightMeasureSpec, 0)) {
-                onMeasureChild(child, childWidthMeasureSpec, keylineWidthUsed,
-                        childHeightMeasureSpec, 0);
+            if (parentChanged || mSortedRemeasure[i] || !lp.canReuseMeasurement(child,
+                    childWidthMeasureSpec, keylineWidthUsed, childHeightMeasureSpec)) {
+                final Behavior b = lp.getBehavior();
+                boolean measured = false;
+                if (b != null) {
+                    final boolean traced = sTraceEnabled
+                            && beginTraceSection(getBehaviorTraceName("onMeasureChild ", b));
+                    final long start = startBehaviorCallback();
+                    measured = b.onMeasureChild(this, child, childWidthMeasureSpec,
+                            keylineWidthUsed, childHeightMeasureSpec, 0);
+                    endBehaviorCallback(b, BehaviorCallbackStats.CALLBACK_MEASURE_CHILD, start);
+                    endTraceSection(traced);
+                }
+                if (!measured) {
+                    onMeasureChild(child, childWidthMeasureSpec, keylineWidthUsed,
+                            childHeightMeasureSpec, 0);
+                }
+
+                lp.recordMeasurement(child, childWidthMeasureSpec, keylineWidthUsed,
+                        childHeightMeasureSpec);
+                // Behaviors commonly measure their view based on its dependencies
+                markDependentsForRemeasure(i);
             }
+            // Else nothing which affects this child changed since it was last measured
 
             widthUsed = Math.max(widthUsed, widthPadding + child.getMeasuredWidth() +
                     lp.leftMargin + lp.rightMargin);
@@ -785,6 +1381,13 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
         setMeasuredDimension(width, height);
     }
 
+    private void markDependentsForRemeasure(int sortedIndex) {
+        final int end = mSortedDependentsStart[sortedIndex + 1];
+        for (int k = mSortedDependentsStart[sortedIndex]; k < end; k++) {
+            mSortedRemeasure[mSortedDependents[k]] = true;
+        }
+    }
+
     private WindowInsetsCompat dispatchApplyWindowInsetsToBehaviors(WindowInsetsCompat insets) {
         if (insets.isConsumed()) {
             return insets;
@@ -798,6 +1401,7 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
 
                 if (b != null) {
                     // If the view has a behavior, let it try first
+                    notifyChildPositionsChanged();
                     insets = b.onApplyWindowInsets(this, child, insets);
                     if (insets.isConsumed()) {
                         // If it consumed the insets, break
@@ -837,6 +1441,7 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
 
     @Override
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        notifyChildPositionsChanged();
         final int layoutDirection = ViewCompat.getLayoutDirection(this);
         final int childCount = mDependencySortedChildren.size();
         for (int i = 0; i < childCount; i++) {
@@ -849,7 +1454,16 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
             final LayoutParams lp = (LayoutParams) child.getLayoutParams();
             final Behavior behavior = lp.getBehavior();
 
-            if (behavior == null || !behavior.onLayoutChild(this, child, layoutDirection)) {
+            boolean laidOut = false;
+            if (behavior != null) {
+                final boolean traced = sTraceEnabled
+                        && beginTraceSection(getBehaviorTraceName("onLayoutChild ", behavior));
+                final long start = startBehaviorCallback();
+                laidOut = behavior.onLayoutChild(this, child, layoutDirection);
+                endBehaviorCallback(behavior, BehaviorCallbackStats.CALLBACK_LAYOUT_CHILD, start);
+                endTraceSection(traced);
+            }
+            if (!laidOut) {
                 onLayoutChild(child, layoutDirection);
             }
         }
@@ -1229,6 +1843,8 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
      * @param type the type of event which has caused this call
      */
     final void onChildViewsChanged(@DispatchChangeEvent final int type) {
+        ensureSortedChildrenCurrent();
+        final boolean traced = beginTraceSection(TRACE_CHILD_VIEWS_CHANGED[type]);
         final int layoutDirection = ViewCompat.getLayoutDirection(this);
         final int childCount = mDependencySortedChildren.size();
         final Rect inset = acquireTempRect();
@@ -1243,39 +1859,16 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
                 continue;
             }
 
-            // Check child views before for anchor
-            for (int j = 0; j < i; j++) {
-                final View checkChild = mDependencySortedChildren.get(j);
-
-                if (lp.mAnchorDirectChild == checkChild) {
-                    offsetChildToAnchor(child, layoutDirection);
-                }
+            // Follow the anchor, which always sorts before us
+            if (mSortedAnchorIndices[i] >= 0) {
+                offsetChildToAnchor(child, layoutDirection);
             }
 
             // Get the current draw rect of the view
             getChildRect(child, true, drawRect);
 
             // Accumulate inset sizes
-            if (lp.insetEdge != Gravity.NO_GRAVITY && !drawRect.isEmpty()) {
-                final int absInsetEdge = GravityCompat.getAbsoluteGravity(
-                        lp.insetEdge, layoutDirection);
-                switch (absInsetEdge & Gravity.VERTICAL_GRAVITY_MASK) {
-                    case Gravity.TOP:
-                        inset.top = Math.max(inset.top, drawRect.bottom);
-                        break;
-                    case Gravity.BOTTOM:
-                        inset.bottom = Math.max(inset.bottom, getHeight() - drawRect.top);
-                        break;
-                }
-                switch (absInsetEdge & Gravity.HORIZONTAL_GRAVITY_MASK) {
-                    case Gravity.LEFT:
-                        inset.left = Math.max(inset.left, drawRect.right);
-                        break;
-                    case Gravity.RIGHT:
-                        inset.right = Math.max(inset.right, getWidth() - drawRect.left);
-                        break;
-                }
-            }
+            accumulateInset(lp, drawRect, inset, layoutDirection);
 
             // Dodge inset edges if necessary
             if (lp.dodgeInsetEdges != Gravity.NO_GRAVITY && child.getVisibility() == View.VISIBLE) {
@@ -1292,38 +1885,136 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
             }
 
             // Update any behavior-dependent views for the change
-            for (int j = i + 1; j < childCount; j++) {
-                final View checkChild = mDependencySortedChildren.get(j);
-                final LayoutParams checkLp = (LayoutParams) checkChild.getLayoutParams();
-                final Behavior b = checkLp.getBehavior();
-
-                if (b != null && b.layoutDependsOn(this, checkChild, child)) {
-                    if (type == EVENT_PRE_DRAW && checkLp.getChangedAfterNestedScroll()) {
-                        // If this is from a pre-draw and we have already been changed
-                        // from a nested scroll, skip the dispatch and reset the flag
-                        checkLp.resetChangedAfterNestedScroll();
-                        continue;
-                    }
+            for (int k = mSortedDependentsStart[i], end = mSortedDependentsStart[i + 1];
+                    k < end; k++) {
+                if (mSortedDependentsByBehavior[k]) {
+                    dispatchDependentViewChanged(type,
+                            mDependencySortedChildren.get(mSortedDependents[k]), child);
+                }
+            }
+        }
 
-                    final boolean handled;
-                    switch (type) {
-                        case EVENT_VIEW_REMOVED:
-                            // EVENT_VIEW_REMOVED means that we need to dispatch
-                            // onDependentViewRemoved() instead
-                            b.onDependentViewRemoved(this, checkChild, child);
-                            handled = true;
-                            break;
-                        default:
-                            // Otherwise we dispatch onDependentViewChanged()
-                            handled = b.onDependentViewChanged(this, checkChild, child);
-                            break;
-                    }
+        releaseTempRect(inset);
+        releaseTempRect(drawRect);
+        releaseTempRect(lastDrawRect);
+        endTraceSection(traced);
+    }
 
-                    if (type == EVENT_NESTED_SCROLL) {
-                        // If this is from a nested scroll, set the flag so that we may skip
-                        // any resulting onPreDraw dispatch (if needed)
-                        checkLp.setChangedAfterNestedScroll(handled);
-                    }
+    /**
+     * Bring the sorted children and their adjacency arrays up to date if children, anchors or
+     * Behaviors have changed since the last measure pass. Otherwise dispatch would follow the
+     * old edges: a newly added dependent would not be called at all, and a new Behavior would
+     * be called for views its {@link Behavior#layoutDependsOn} never asked for.
+     *
+     * @return true if anything had to be rebuilt
+     */
+    private boolean ensureSortedChildrenCurrent() {
+        boolean stale = mChildDagInvalid || mDependencySortedChildrenInvalid;
+        for (int i = 0, count = getChildCount(); !stale && i < count; i++) {
+            stale = ((LayoutParams) getChildAt(i).getLayoutParams()).mDependenciesDirty;
+        }
+        if (stale) {
+            prepareChildren();
+        }
+        return stale;
+    }
+
+    /**
+     * Mark a child as possibly changed so that the next
+     * {@link #onPendingChildViewsChanged(int)} starts propagating from it.
+     */
+    final void markChildPendingDependencyCheck(View child) {
+        final int index = getSortedIndex(child);
+        if (index >= 0) {
+            mSortedPending[index] = true;
+            mFirstPendingSortedIndex = Math.min(mFirstPendingSortedIndex, index);
+        }
+        // Else the child has not been sorted yet. The next pre-draw pass will pick it up.
+    }
+
+    /**
+     * Dispatch dependent view changes, starting only from the children which have been marked
+     * through {@link #markChildPendingDependencyCheck(View)}.
+     *
+     * <p>Unlike {@link #onChildViewsChanged(int)}, which checks every child against every other
+     * child, this only follows the edges of the dependency graph out of children whose rect
+     * actually changed since it was last recorded. The walk stops at any dependent whose rect
+     * is unchanged, so moving a single view only touches the views depending on it.</p>
+     *
+     * @param type the type of event which has caused this call
+     */
+    final void onPendingChildViewsChanged(@DispatchChangeEvent final int type) {
+        if (ensureSortedChildrenCurrent()) {
+            // The marks were made against the old order, so check every child instead
+            mFirstPendingSortedIndex = Integer.MAX_VALUE;
+            onChildViewsChanged(type);
+            return;
+        }
+
+        final boolean traced = beginTraceSection(TRACE_PENDING_CHILD_VIEWS_CHANGED[type]);
+        final int childCount = mDependencySortedChildren.size();
+        final int firstIndex = mFirstPendingSortedIndex;
+        mFirstPendingSortedIndex = Integer.MAX_VALUE;
+
+        final int layoutDirection = ViewCompat.getLayoutDirection(this);
+        final Rect inset = acquireTempRect();
+        final Rect drawRect = acquireTempRect();
+        final Rect lastDrawRect = acquireTempRect();
+
+        for (int i = firstIndex; i < childCount; i++) {
+            if (!mSortedPending[i]) {
+                continue;
+            }
+            mSortedPending[i] = false;
+
+            final View child = mDependencySortedChildren.get(i);
+            final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+
+            if (type == EVENT_PRE_DRAW && child.getVisibility() == View.GONE) {
+                // Do not try to update GONE child views in pre draw updates.
+                continue;
+            }
+
+            if (mSortedAnchorIndices[i] >= 0) {
+                // The anchor always sorts before us, and may have just moved
+                offsetChildToAnchor(child, layoutDirection);
+            }
+
+            // Get the current draw rect of the view
+            getChildRect(child, true, drawRect);
+
+            // Dodge inset edges if necessary. The inset has to take every inset child sorted
+            // before us into account, not only the ones which changed.
+            if (lp.dodgeInsetEdges != Gravity.NO_GRAVITY && child.getVisibility() == View.VISIBLE) {
+                inset.setEmpty();
+                for (int j = 0; j < mSortedInsetCount && mSortedInsetIndices[j] < i; j++) {
+                    final View insetChild = mDependencySortedChildren.get(mSortedInsetIndices[j]);
+                    getChildRect(insetChild, true, lastDrawRect);
+                    accumulateInset((LayoutParams) insetChild.getLayoutParams(), lastDrawRect,
+                            inset, layoutDirection);
+                }
+                offsetChildByInset(child, inset, layoutDirection);
+            }
+
+            if (type != EVENT_VIEW_REMOVED) {
+                // Did it change? if not stop here
+                getLastChildRect(child, lastDrawRect);
+                if (lastDrawRect.equals(drawRect)) {
+                    continue;
+                }
+                recordLastChildRect(child, drawRect);
+            }
+
+            // Only the views which depend on this child need to be looked at
+            for (int k = mSortedDependentsStart[i], end = mSortedDependentsStart[i + 1];
+                    k < end; k++) {
+                // The dependent may need to follow an anchor or dodge an inset, so check it
+                // whether or not its Behavior is interested
+                mSortedPending[mSortedDependents[k]] = true;
+
+                if (mSortedDependentsByBehavior[k]) {
+                    dispatchDependentViewChanged(type,
+                            mDependencySortedChildren.get(mSortedDependents[k]), child);
                 }
             }
         }
@@ -1331,6 +2022,74 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
         releaseTempRect(inset);
         releaseTempRect(drawRect);
         releaseTempRect(lastDrawRect);
+        endTraceSection(traced);
+    }
+
+    private void dispatchDependentViewChanged(@DispatchChangeEvent final int type,
+            View checkChild, View child) {
+        final LayoutParams checkLp = (LayoutParams) checkChild.getLayoutParams();
+        final Behavior b = checkLp.getBehavior();
+        if (b == null) {
+            // The Behavior has been removed since the adjacency was built
+            return;
+        }
+        if (type == EVENT_PRE_DRAW && checkLp.getChangedAfterNestedScroll()) {
+            // If this is from a pre-draw and we have already been changed
+            // from a nested scroll, skip the dispatch and reset the flag
+            checkLp.resetChangedAfterNestedScroll();
+            return;
+        }
+
+        final boolean handled;
+        switch (type) {
+            case EVENT_VIEW_REMOVED:
+                // EVENT_VIEW_REMOVED means that we need to dispatch
+                // onDependentViewRemoved() instead
+                b.onDependentViewRemoved(this, checkChild, child);
+                handled = true;
+                break;
+            default: {
+                // Otherwise we dispatch onDependentViewChanged()
+                final long start = startBehaviorCallback();
+                handled = b.onDependentViewChanged(this, checkChild, child);
+                endBehaviorCallback(b, BehaviorCallbackStats.CALLBACK_DEPENDENT_VIEW_CHANGED,
+                        start);
+                break;
+            }
+        }
+        if (handled) {
+            notifyChildPositionsChanged();
+        }
+
+        if (type == EVENT_NESTED_SCROLL) {
+            // If this is from a nested scroll, set the flag so that we may skip
+            // any resulting onPreDraw dispatch (if needed)
+            checkLp.setChangedAfterNestedScroll(handled);
+        }
+    }
+
+    private void accumulateInset(LayoutParams lp, Rect drawRect, Rect inset,
+            int layoutDirection) {
+        if (lp.insetEdge != Gravity.NO_GRAVITY && !drawRect.isEmpty()) {
+            final int absInsetEdge = GravityCompat.getAbsoluteGravity(
+                    lp.insetEdge, layoutDirection);
+            switch (absInsetEdge & Gravity.VERTICAL_GRAVITY_MASK) {
+                case Gravity.TOP:
+                    inset.top = Math.max(inset.top, drawRect.bottom);
+                    break;
+                case Gravity.BOTTOM:
+                    inset.bottom = Math.max(inset.bottom, getHeight() - drawRect.top);
+                    break;
+            }
+            switch (absInsetEdge & Gravity.HORIZONTAL_GRAVITY_MASK) {
+                case Gravity.LEFT:
+                    inset.left = Math.max(inset.left, drawRect.right);
+                    break;
+                case Gravity.RIGHT:
+                    inset.right = Math.max(inset.right, getWidth() - drawRect.left);
+                    break;
+            }
+        }
     }
 
     private void offsetChildByInset(final View child, final Rect inset, final int layoutDirection) {
@@ -1451,10 +2210,46 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
                         child.getLayoutParams();
                 Behavior b = lp.getBehavior();
                 if (b != null) {
+                    final long start = startBehaviorCallback();
                     b.onDependentViewChanged(this, child, view);
+                    endBehaviorCallback(b, BehaviorCallbackStats.CALLBACK_DEPENDENT_VIEW_CHANGED,
+                            start);
                 }
             }
         }
+        notifyChildPositionsChanged();
+    }
+
+    /**
+     * Let this layout know that one or more of its children may have moved.
+     *
+     * <p>Before a frame is drawn, the dependent views are only checked if a child has been
+     * laid out, handled a touch or nested scroll through its {@link Behavior}, or been reported
+     * through this method since the last frame, or if a child has been moved or transformed
+     * since then. Only the direct children are compared, so moving a descendant which is used
+     * as an anchor always leads to a check. Calling this method is never needed for dependent
+     * views to follow, but saves the comparison.</p>
+     */
+    public void notifyChildPositionsChanged() {
+        mChildPositionGeneration++;
+    }
+
+    /**
+     * Record where each child is drawn, returning true if any of them has moved or been
+     * transformed since the last record, or if that can't be told from the children alone.
+     */
+    private boolean recordChildDrawnPositions() {
+        boolean changed = false;
+        for (int i = 0, count = getChildCount(); i < count; i++) {
+            final View child = getChildAt(i);
+            final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+            changed |= lp.recordDrawnPosition(child);
+            if (lp.mAnchorView != null && lp.mAnchorView != lp.mAnchorDirectChild) {
+                // Anchored to a descendant, which might have moved within its parent
+                changed = true;
+            }
+        }
+        return changed;
     }
 
     /**
@@ -1503,15 +2298,7 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
      * Add or remove the pre-draw listener as necessary.
      */
     void ensurePreDrawListener() {
-        boolean hasDependencies = false;
-        final int childCount = getChildCount();
-        for (int i = 0; i < childCount; i++) {
-            final View child = getChildAt(i);
-            if (hasDependencies(child)) {
-                hasDependencies = true;
-                break;
-            }
-        }
+        final boolean hasDependencies = mHasChildDependencies;
 
         if (hasDependencies != mNeedsPreDrawListener) {
             if (hasDependencies) {
@@ -1522,18 +2309,13 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
         }
     }
 
-    /**
-     * Check if the given child has any layout dependencies on other child views.
-     */
-    private boolean hasDependencies(View child) {
-        return mChildDag.hasOutgoingEdges(child);
-    }
-
     /**
      * Add the pre-draw listener if we're attached to a window and mark that we currently
      * need it when attached.
      */
     void addPreDrawListener() {
+        // Positions may have changed while nobody was listening
+        notifyChildPositionsChanged();
         if (mIsAttachedToWindow) {
             // Add the listener
             if (mOnPreDrawListener == null) {
@@ -1602,7 +2384,10 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
                 // If we have needed to move, make sure to notify the child's Behavior
                 final Behavior b = lp.getBehavior();
                 if (b != null) {
+                    final long start = startBehaviorCallback();
                     b.onDependentViewChanged(this, child, lp.mAnchorView);
+                    endBehaviorCallback(b, BehaviorCallbackStats.CALLBACK_DEPENDENT_VIEW_CHANGED,
+                            start);
                 }
             }
 
@@ -1690,6 +2475,9 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
     public boolean onStartNestedScroll(View child, View target, int axes, int type) {
         boolean handled = false;
 
+        final List<View> acceptedChildren = getNestedScrollChildren(type);
+        acceptedChildren.clear();
+
         final int childCount = getChildCount();
         for (int i = 0; i < childCount; i++) {
             final View view = getChildAt(i);
@@ -1704,6 +2492,9 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
                         target, axes, type);
                 handled |= accepted;
                 lp.setNestedScrollAccepted(type, accepted);
+                if (accepted) {
+                    acceptedChildren.add(view);
+                }
             } else {
                 lp.setNestedScrollAccepted(type, false);
             }
@@ -1711,6 +2502,16 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
         return handled;
     }
 
+    /**
+     * Returns the children whose Behavior accepted the nested scroll of the given type in
+     * {@link #onStartNestedScroll(View, View, int, int)}, so that the rest of the gesture only
+     * needs to visit those.
+     */
+    private List<View> getNestedScrollChildren(int type) {
+        return type == ViewCompat.TYPE_TOUCH
+                ? mNestedScrollTouchChildren : mNestedScrollNonTouchChildren;
+    }
+
     @Override
     public void onNestedScrollAccepted(View child, View target, int nestedScrollAxes) {
         onNestedScrollAccepted(child, target, nestedScrollAxes, ViewCompat.TYPE_TOUCH);
@@ -1721,9 +2522,9 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
         mNestedScrollingParentHelper.onNestedScrollAccepted(child, target, nestedScrollAxes, type);
         mNestedScrollingTarget = target;
 
-        final int childCount = getChildCount();
-        for (int i = 0; i < childCount; i++) {
-            final View view = getChildAt(i);
+        final List<View> acceptedChildren = getNestedScrollChildren(type);
+        for (int i = 0, size = acceptedChildren.size(); i < size; i++) {
+            final View view = acceptedChildren.get(i);
             final LayoutParams lp = (LayoutParams) view.getLayoutParams();
             if (!lp.isNestedScrollAccepted(type)) {
                 continue;
@@ -1744,11 +2545,13 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
 
     @Override
     public void onStopNestedScroll(View target, int type) {
+        // Make sure the dependent views have caught up before the Behaviors see the scroll end
+        flushNestedScrollDispatch();
         mNestedScrollingParentHelper.onStopNestedScroll(target, type);
 
-        final int childCount = getChildCount();
-        for (int i = 0; i < childCount; i++) {
-            final View view = getChildAt(i);
+        final List<View> acceptedChildren = getNestedScrollChildren(type);
+        for (int i = 0, size = acceptedChildren.size(); i < size; i++) {
+            final View view = acceptedChildren.get(i);
             final LayoutParams lp = (LayoutParams) view.getLayoutParams();
             if (!lp.isNestedScrollAccepted(type)) {
                 continue;
@@ -1761,6 +2564,7 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
             lp.resetNestedScroll(type);
             lp.resetChangedAfterNestedScroll();
         }
+        acceptedChildren.clear();
         mNestedScrollingTarget = null;
     }
 
@@ -1774,11 +2578,11 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
     @Override
     public void onNestedScroll(View target, int dxConsumed, int dyConsumed,
                                int dxUnconsumed, int dyUnconsumed, int type) {
-        final int childCount = getChildCount();
         boolean accepted = false;
 
-        for (int i = 0; i < childCount; i++) {
-            final View view = getChildAt(i);
+        final List<View> acceptedChildren = getNestedScrollChildren(type);
+        for (int i = 0, size = acceptedChildren.size(); i < size; i++) {
+            final View view = acceptedChildren.get(i);
             if (view.getVisibility() == GONE) {
                 // If the child is GONE, skip...
                 continue;
@@ -1793,12 +2597,13 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
             if (viewBehavior != null) {
                 viewBehavior.onNestedScroll(this, view, target, dxConsumed, dyConsumed,
                         dxUnconsumed, dyUnconsumed, type);
+                markChildPendingDependencyCheck(view);
                 accepted = true;
             }
         }
 
         if (accepted) {
-            onChildViewsChanged(EVENT_NESTED_SCROLL);
+            dispatchNestedScrollChanged();
         }
     }
 
@@ -1813,9 +2618,9 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
         int yConsumed = 0;
         boolean accepted = false;
 
-        final int childCount = getChildCount();
-        for (int i = 0; i < childCount; i++) {
-            final View view = getChildAt(i);
+        final List<View> acceptedChildren = getNestedScrollChildren(type);
+        for (int i = 0, size = acceptedChildren.size(); i < size; i++) {
+            final View view = acceptedChildren.get(i);
             if (view.getVisibility() == GONE) {
                 // If the child is GONE, skip...
                 continue;
@@ -1829,13 +2634,17 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
             final Behavior viewBehavior = lp.getBehavior();
             if (viewBehavior != null) {
                 mTempIntPair[0] = mTempIntPair[1] = 0;
+                final long start = startBehaviorCallback();
                 viewBehavior.onNestedPreScroll(this, view, target, dx, dy, mTempIntPair, type);
+                endBehaviorCallback(viewBehavior, BehaviorCallbackStats.CALLBACK_NESTED_PRE_SCROLL,
+                        start);
 
                 xConsumed = dx > 0 ? Math.max(xConsumed, mTempIntPair[0])
                         : Math.min(xConsumed, mTempIntPair[0]);
                 yConsumed = dy > 0 ? Math.max(yConsumed, mTempIntPair[1])
                         : Math.min(yConsumed, mTempIntPair[1]);
 
+                markChildPendingDependencyCheck(view);
                 accepted = true;
             }
         }
@@ -1844,7 +2653,7 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
         consumed[1] = yConsumed;
 
         if (accepted) {
-            onChildViewsChanged(EVENT_NESTED_SCROLL);
+            dispatchNestedScrollChanged();
         }
     }
 
@@ -1852,9 +2661,9 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
     public boolean onNestedFling(View target, float velocityX, float velocityY, boolean consumed) {
         boolean handled = false;
 
-        final int childCount = getChildCount();
-        for (int i = 0; i < childCount; i++) {
-            final View view = getChildAt(i);
+        final List<View> acceptedChildren = getNestedScrollChildren(ViewCompat.TYPE_TOUCH);
+        for (int i = 0, size = acceptedChildren.size(); i < size; i++) {
+            final View view = acceptedChildren.get(i);
             if (view.getVisibility() == GONE) {
                 // If the child is GONE, skip...
                 continue;
@@ -1869,10 +2678,11 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
             if (viewBehavior != null) {
                 handled |= viewBehavior.onNestedFling(this, view, target, velocityX, velocityY,
                         consumed);
+                markChildPendingDependencyCheck(view);
             }
         }
         if (handled) {
-            onChildViewsChanged(EVENT_NESTED_SCROLL);
+            dispatchNestedScrollChanged();
         }
         return handled;
     }
@@ -1881,9 +2691,9 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
     public boolean onNestedPreFling(View target, float velocityX, float velocityY) {
         boolean handled = false;
 
-        final int childCount = getChildCount();
-        for (int i = 0; i < childCount; i++) {
-            final View view = getChildAt(i);
+        final List<View> acceptedChildren = getNestedScrollChildren(ViewCompat.TYPE_TOUCH);
+        for (int i = 0, size = acceptedChildren.size(); i < size; i++) {
+            final View view = acceptedChildren.get(i);
             if (view.getVisibility() == GONE) {
                 // If the child is GONE, skip...
                 continue;
@@ -1910,7 +2720,14 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
     class OnPreDrawListener implements ViewTreeObserver.OnPreDrawListener {
         @Override
         public boolean onPreDraw() {
-            onChildViewsChanged(EVENT_PRE_DRAW);
+            // Always record the positions, so that they are current for the next frame
+            final boolean moved = recordChildDrawnPositions();
+            if (moved || mPreDrawPositionGeneration != mChildPositionGeneration) {
+                onChildViewsChanged(EVENT_PRE_DRAW);
+                // Anything moved by the pass itself has already been dispatched
+                mPreDrawPositionGeneration = mChildPositionGeneration;
+                recordChildDrawnPositions();
+            }
             return true;
         }
     }
@@ -1965,6 +2782,25 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
         @NonNull Behavior getBehavior();
     }
 
+    /**
+     * Creates instances of a {@link Behavior} class without going through reflection.
+     *
+     * @see #registerBehaviorFactory(Class, BehaviorFactory)
+     */
+    public interface BehaviorFactory {
+        /**
+         * Create a new instance of the Behavior.
+         *
+         * @param context the Context the Behavior is created in
+         * @param attrs the layout attributes of the child view when the Behavior is inflated
+         *              from {@code app:layout_behavior}, or null when it is used as a
+         *              {@link DefaultBehavior} and should be created as by its default
+         *              constructor
+         * @return the new Behavior
+         */
+        @NonNull Behavior newBehavior(@NonNull Context context, @Nullable AttributeSet attrs);
+    }
+
     /**
      * Interaction behavior plugin for child views of {@link HorizontalCoordinatorLayout}.
      *
@@ -2665,6 +3501,42 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
 
         boolean mBehaviorResolved = false;
 
+        /**
+         * Whether the dependency edges of the associated child need to be recomputed by the
+         * parent. New LayoutParams always start out dirty.
+         */
+        boolean mDependenciesDirty = true;
+
+        /**
+         * Index of the associated child in the parent's dependency sorted children.
+         */
+        int mDependencySortedIndex = -1;
+
+        /**
+         * The specs the associated child was last measured with by the parent and the size that
+         * resulted, so that measuring it again with the same specs can be skipped.
+         */
+        boolean mMeasureCacheValid;
+        int mMeasureCacheWidthSpec;
+        int mMeasureCacheWidthUsed;
+        int mMeasureCacheHeightSpec;
+        int mMeasureCacheMeasuredWidth;
+        int mMeasureCacheMeasuredHeight;
+
+        /**
+         * Where the associated child was drawn when the parent last checked before a frame, so
+         * that the dependent views are only checked again if it moved.
+         */
+        int mDrawnLeft = Integer.MIN_VALUE;
+        int mDrawnTop = Integer.MIN_VALUE;
+        int mDrawnRight = Integer.MIN_VALUE;
+        int mDrawnBottom = Integer.MIN_VALUE;
+        float mDrawnTranslationX;
+        float mDrawnTranslationY;
+        float mDrawnScaleX = 1f;
+        float mDrawnScaleY = 1f;
+        float mDrawnRotation;
+
         /**
          * A {@link Gravity} value describing how this child view should lay out.
          * If either or both of the axes are not specified, they are treated by CoordinatorLayout
@@ -2796,6 +3668,7 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
         public void setAnchorId(@IdRes int id) {
             invalidateAnchor();
             mAnchorId = id;
+            mDependenciesDirty = true;
         }
 
         /**
@@ -2828,6 +3701,8 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
                 mBehavior = behavior;
                 mBehaviorTag = null;
                 mBehaviorResolved = true;
+                mDependenciesDirty = true;
+                mMeasureCacheValid = false;
 
                 if (behavior != null) {
                     // Now dispatch that the Behavior has been attached
@@ -2836,6 +3711,62 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
             }
         }
 
+        void recordMeasurement(View child, int widthSpec, int widthUsed, int heightSpec) {
+            mMeasureCacheWidthSpec = widthSpec;
+            mMeasureCacheWidthUsed = widthUsed;
+            mMeasureCacheHeightSpec = heightSpec;
+            mMeasureCacheMeasuredWidth = child.getMeasuredWidth();
+            mMeasureCacheMeasuredHeight = child.getMeasuredHeight();
+            mMeasureCacheValid = true;
+        }
+
+        /**
+         * Record where the child is drawn, returning true if that differs from the last record.
+         */
+        boolean recordDrawnPosition(View child) {
+            final int left = child.getLeft();
+            final int top = child.getTop();
+            final int right = child.getRight();
+            final int bottom = child.getBottom();
+            final float translationX = child.getTranslationX();
+            final float translationY = child.getTranslationY();
+            final float scaleX = child.getScaleX();
+            final float scaleY = child.getScaleY();
+            final float rotation = child.getRotation();
+            if (left == mDrawnLeft && top == mDrawnTop && right == mDrawnRight
+                    && bottom == mDrawnBottom && translationX == mDrawnTranslationX
+                    && translationY == mDrawnTranslationY && scaleX == mDrawnScaleX
+                    && scaleY == mDrawnScaleY && rotation == mDrawnRotation) {
+                return false;
+            }
+            mDrawnLeft = left;
+            mDrawnTop = top;
+            mDrawnRight = right;
+            mDrawnBottom = bottom;
+            mDrawnTranslationX = translationX;
+            mDrawnTranslationY = translationY;
+            mDrawnScaleX = scaleX;
+            mDrawnScaleY = scaleY;
+            mDrawnRotation = rotation;
+            return true;
+        }
+
+        /**
+         * Returns true if measuring the child with the given specs would give the same result as
+         * its last measurement: the specs are the same, the child has not requested a layout
+         * and nothing else has measured it since. The parent's padding and insets are not part
+         * of this, the parent remeasures every child when they change.
+         */
+        boolean canReuseMeasurement(View child, int widthSpec, int widthUsed, int heightSpec) {
+            return mMeasureCacheValid
+                    && !child.isLayoutRequested()
+                    && mMeasureCacheWidthSpec == widthSpec
+                    && mMeasureCacheWidthUsed == widthUsed
+                    && mMeasureCacheHeightSpec == heightSpec
+                    && mMeasureCacheMeasuredWidth == child.getMeasuredWidth()
+                    && mMeasureCacheMeasuredHeight == child.getMeasuredHeight();
+        }
+
         /**
          * Set the last known position rect for this child view
          * @param r the rect to set
@@ -3075,6 +4006,13 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
 
         @Override
         public void onChildViewAdded(View parent, View child) {
+            // The edges are computed on the next measure pass, once all anchors are resolvable
+            mChildDag.addNode(child);
+            ((LayoutParams) child.getLayoutParams()).mDependenciesDirty = true;
+            mDependencySortedChildrenInvalid = true;
+            mTopSortedChildrenInvalid = true;
+            notifyChildPositionsChanged();
+
             if (mOnHierarchyChangeListener != null) {
                 mOnHierarchyChangeListener.onChildViewAdded(parent, child);
             }
@@ -3084,6 +4022,17 @@ public class HorizontalCoordinatorLayout extends ViewGroup implements NestedScro
         public void onChildViewRemoved(View parent, View child) {
             onChildViewsChanged(EVENT_VIEW_REMOVED);
 
+            // Removing a node keeps the remaining sort order valid, so drop the view right away
+            // and keep the adjacency in sync for any dispatch before the next measure
+            mChildDag.removeNode(child);
+            if (mDependencySortedChildren.remove(child)) {
+                buildSortedAdjacency();
+            }
+            mTopSortedChildrenInvalid = true;
+            mNestedScrollTouchChildren.remove(child);
+            mNestedScrollNonTouchChildren.remove(child);
+            notifyChildPositionsChanged();
+
             if (mOnHierarchyChangeListener != null) {
                 mOnHierarchyChangeListener.onChildViewRemoved(parent, child);
             }
@@ -37,6 +37,8 @@ abstract class HorizontalHeaderBehavior<V extends View> extends ViewOffsetBehavi
 
     private Runnable mFlingRunnable;
     OverScroller mScroller;
+    // Only used to work out where a fling would end, never to drive one
+    private OverScroller mPredictionScroller;
 
     private boolean mIsBeingDragged;
     private int mActivePointerId = INVALID_POINTER;
@@ -241,6 +243,12 @@ abstract class HorizontalHeaderBehavior<V extends View> extends ViewOffsetBehavi
                 0, 0  // y
         );
 
+        if (onFlingStarting(horizontalCoordinatorLayout, layout, mScroller.getFinalX(), velocityX)) {
+            // The fling has been replaced by a single animation to where it should end
+            mScroller.abortAnimation();
+            return true;
+        }
+
         if (mScroller.computeScrollOffset()) {
             mFlingRunnable = new FlingRunnable(horizontalCoordinatorLayout, layout);
             ViewCompat.postOnAnimation(layout, mFlingRunnable);
@@ -251,6 +259,32 @@ abstract class HorizontalHeaderBehavior<V extends View> extends ViewOffsetBehavi
         }
     }
 
+    /**
+     * Returns the offset a fling from the given offset would come to rest at, without actually
+     * flinging.
+     */
+    final int predictFlingOffset(V layout, int startOffset, int minOffset, int maxOffset,
+                                 float velocityX) {
+        if (mPredictionScroller == null) {
+            mPredictionScroller = new OverScroller(layout.getContext());
+        }
+        mPredictionScroller.fling(startOffset, 0, Math.round(velocityX), 0,
+                minOffset, maxOffset, 0, 0);
+        final int finalOffset = mPredictionScroller.getFinalX();
+        mPredictionScroller.abortAnimation();
+        return finalOffset;
+    }
+
+    /**
+     * Called when a fling is about to start, with the offset it will come to rest at.
+     *
+     * @return true if the fling has been handled some other way and should not run
+     */
+    boolean onFlingStarting(HorizontalCoordinatorLayout parent, V layout, int finalOffset,
+                            float velocityX) {
+        return false;
+    }
+
     /**
      * Called when a fling has finished, or the fling was initiated but there wasn't enough
      * velocity to start it.
@@ -105,7 +105,7 @@ abstract class HorizontalHeaderScrollingViewBehavior extends ViewOffsetBehavior<
                     (HorizontalCoordinatorLayout.LayoutParams) child.getLayoutParams();
             final Rect available = mTempRect1;
             if (layoutDirection == 0) {// 水平
-                available.set(header.getRight() + lp.leftMargin,
+                available.set(ViewOffsetHelper.getVisualRight(header) + lp.leftMargin,
                         parent.getTop() + lp.topMargin,
                         parent.getWidth() - parent.getPaddingRight()- lp.rightMargin,
                         parent.getHeight() + header.getBottom() - parent.getPaddingBottom() - lp.bottomMargin);
@@ -134,7 +134,7 @@ abstract class HorizontalHeaderScrollingViewBehavior extends ViewOffsetBehavior<
             final int overlap = getOverlapPixelsForOffset(header);
 
             child.layout(out.left- overlap, out.top , out.right - overlap, out.bottom );
-            mHorizontalLayoutGap = out.left - header.getRight();
+            mHorizontalLayoutGap = out.left - ViewOffsetHelper.getVisualRight(header);
         } else {
             // If we don't have a dependency, let super handle it
             super.layoutChild(parent, child, layoutDirection);
@@ -0,0 +1,56 @@
+package com.agehua.horizontalcoordinatordemo;
+
+import android.support.annotation.NonNull;
+import android.view.animation.Interpolator;
+
+/**
+ * An {@link Interpolator} which samples another interpolator into a fixed size table up front,
+ * and then answers {@link #getInterpolation(float)} by linearly interpolating between the two
+ * nearest samples. This trades a little accuracy for a constant and cheap lookup, which matters
+ * for path based interpolators evaluated on every scroll offset.
+ *
+ * <p>For an interpolator whose second derivative is bounded by {@code M} on [0, 1], the error
+ * of a table with {@code n} samples is at most {@code M / (8 * (n - 1)^2)}. With the
+ * {@link #DEFAULT_SAMPLE_COUNT default} of 129 samples that is below {@code 0.00001 * M}, which
+ * for the usual material curves ({@code M} well below 10) keeps scroll offsets within a tenth
+ * of a pixel over a 1000px scroll range. Interpolators with discontinuities, such as a bounce,
+ * are off by more around each jump.</p>
+ */
+final class InterpolatorLookupTable implements Interpolator {
+
+    static final int DEFAULT_SAMPLE_COUNT = 129;
+
+    private final Interpolator mSource;
+    private final float[] mValues;
+    private final float mStepSize;
+
+    InterpolatorLookupTable(@NonNull Interpolator source) {
+        this(source, DEFAULT_SAMPLE_COUNT);
+    }
+
+    InterpolatorLookupTable(@NonNull Interpolator source, int sampleCount) {
+        if (sampleCount < 2) {
+            throw new IllegalArgumentException("sampleCount must be at least 2, was "
+                    + sampleCount);
+        }
+        mSource = source;
+        mValues = new float[sampleCount];
+        mStepSize = 1f / (sampleCount - 1);
+
+        for (int i = 0; i < sampleCount; i++) {
+            mValues[i] = source.getInterpolation(i * mStepSize);
+        }
+    }
+
+    @Override
+    public float getInterpolation(float input) {
+        if (input < 0f || input > 1f) {
+            // Outside of the table, which is rare enough to just ask the source
+            return mSource.getInterpolation(input);
+        }
+
+        final int position = Math.min((int) (input * (mValues.length - 1)), mValues.length - 2);
+        final float weight = (input - position * mStepSize) / mStepSize;
+        return mValues[position] + weight * (mValues[position + 1] - mValues[position]);
+    }
+}
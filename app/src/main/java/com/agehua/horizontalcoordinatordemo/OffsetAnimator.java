@@ -0,0 +1,93 @@
+package com.agehua.horizontalcoordinatordemo;
+
+import android.support.annotation.Nullable;
+
+/**
+ * Drives the offset animations of a {@link HorizontalAppBarLayout.Behavior}, such as expanding,
+ * collapsing and snapping to a child.
+ *
+ * <p>An animator is created once per Behavior and reused for every animation, so
+ * implementations should not allocate when an animation is started. Starting an animation while
+ * another one is running retargets the running one rather than restarting it, keeping its
+ * current position and velocity.</p>
+ *
+ * @see HorizontalAppBarLayout.Behavior#setOffsetAnimator(OffsetAnimator)
+ */
+public abstract class OffsetAnimator {
+
+    /**
+     * Receives the offsets of a running animation, once per frame.
+     */
+    public interface UpdateListener {
+        /**
+         * Called when the animated offset has changed.
+         *
+         * @param offset the new offset in px
+         */
+        void onOffsetUpdate(int offset);
+
+        /**
+         * Called when the animation has reached its target or has been cancelled.
+         */
+        void onAnimationEnd();
+    }
+
+    private UpdateListener mUpdateListener;
+
+    /**
+     * Set the listener which receives the animated offsets.
+     */
+    public final void setUpdateListener(@Nullable UpdateListener listener) {
+        mUpdateListener = listener;
+    }
+
+    /**
+     * Report a new animated offset to the listener.
+     */
+    protected final void dispatchOffsetUpdate(int offset) {
+        if (mUpdateListener != null) {
+            mUpdateListener.onOffsetUpdate(offset);
+        }
+    }
+
+    /**
+     * Report to the listener that the animation has ended.
+     */
+    protected final void dispatchAnimationEnd() {
+        if (mUpdateListener != null) {
+            mUpdateListener.onAnimationEnd();
+        }
+    }
+
+    /**
+     * Animate the offset to the given target. If an animation is already running it is
+     * retargeted, keeping its own position and velocity, and the given current offset and
+     * velocity are ignored.
+     *
+     * @param currentOffset the offset to start from in px
+     * @param targetOffset the offset to end at in px
+     * @param velocity the initial velocity in px per second, positive when the offset grows
+     */
+    public abstract void animateTo(int currentOffset, int targetOffset, float velocity);
+
+    /**
+     * Stop any running animation where it is. The listener is told that the animation ended.
+     */
+    public abstract void cancel();
+
+    /**
+     * Returns true if an animation is running.
+     */
+    public abstract boolean isRunning();
+
+    /**
+     * Returns the offset the running animation ends at.
+     */
+    public abstract int getTargetOffset();
+
+    /**
+     * Returns the current velocity of the running animation in px per second, or 0 if there
+     * is none.
+     */
+    public abstract float getVelocity();
+}
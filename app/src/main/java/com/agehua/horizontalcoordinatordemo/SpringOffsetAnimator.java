@@ -0,0 +1,136 @@
+package com.agehua.horizontalcoordinatordemo;
+
+import android.view.Choreographer;
+
+/**
+ * An {@link OffsetAnimator} which moves the offset with a critically damped spring. The spring
+ * settles as fast as possible without oscillating, and since its state is just a position and
+ * a velocity it can be retargeted mid-flight without any jump in speed.
+ *
+ * <p>Each frame advances the spring with its exact solution, so it stays stable no matter how
+ * long the frames take. It is driven by {@link Choreographer} and must be used from the UI
+ * thread.</p>
+ */
+public final class SpringOffsetAnimator extends OffsetAnimator {
+
+    /**
+     * The default stiffness, settling a full screen of offset in roughly 350ms.
+     */
+    public static final float DEFAULT_STIFFNESS = 800f;
+
+    // The spring is at rest once it is this close to the target, and this slow
+    private static final float REST_DISTANCE = 0.5f; // px
+    private static final float REST_VELOCITY = 20f; // px/s
+
+    private float mNaturalFrequency = (float) Math.sqrt(DEFAULT_STIFFNESS);
+
+    private boolean mRunning;
+    private int mTargetOffset;
+    private float mPosition;
+    private float mVelocity;
+    private long mLastFrameTimeNanos;
+
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            onFrame(frameTimeNanos);
+        }
+    };
+
+    /**
+     * Set the stiffness of the spring. Stiffer springs reach the target sooner.
+     *
+     * @param stiffness the stiffness, which must be greater than 0
+     */
+    public void setStiffness(float stiffness) {
+        if (stiffness <= 0f) {
+            throw new IllegalArgumentException("Spring stiffness must be greater than 0");
+        }
+        mNaturalFrequency = (float) Math.sqrt(stiffness);
+    }
+
+    /**
+     * Returns the stiffness of the spring.
+     */
+    public float getStiffness() {
+        return mNaturalFrequency * mNaturalFrequency;
+    }
+
+    @Override
+    public void animateTo(int currentOffset, int targetOffset, float velocity) {
+        mTargetOffset = targetOffset;
+        if (mRunning) {
+            // Keep going from where we are, just towards the new target
+            return;
+        }
+        if (currentOffset == targetOffset && Math.abs(velocity) < REST_VELOCITY) {
+            // Already at rest on the target
+            return;
+        }
+
+        mPosition = currentOffset;
+        mVelocity = velocity;
+        mRunning = true;
+        mLastFrameTimeNanos = System.nanoTime();
+        Choreographer.getInstance().postFrameCallback(mFrameCallback);
+    }
+
+    @Override
+    public void cancel() {
+        if (mRunning) {
+            Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+            mRunning = false;
+            mVelocity = 0f;
+            dispatchAnimationEnd();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    @Override
+    public int getTargetOffset() {
+        return mTargetOffset;
+    }
+
+    @Override
+    public float getVelocity() {
+        return mRunning ? mVelocity : 0f;
+    }
+
+    private void onFrame(long frameTimeNanos) {
+        if (!mRunning) {
+            return;
+        }
+
+        // The frame time can be slightly older than when we started
+        final float dt = Math.max(0L, frameTimeNanos - mLastFrameTimeNanos) / 1e9f;
+        mLastFrameTimeNanos = frameTimeNanos;
+
+        // x(t) = (x0 + (v0 + w * x0) * t) * e^(-w * t), relative to the target
+        final float w = mNaturalFrequency;
+        final float x0 = mPosition - mTargetOffset;
+        final float b = mVelocity + w * x0;
+        final float decay = (float) Math.exp(-w * dt);
+        final float x = (x0 + b * dt) * decay;
+        mVelocity = (mVelocity - w * b * dt) * decay;
+        mPosition = mTargetOffset + x;
+
+        if (Math.abs(x) < REST_DISTANCE && Math.abs(mVelocity) < REST_VELOCITY) {
+            mPosition = mTargetOffset;
+            mVelocity = 0f;
+            mRunning = false;
+            dispatchOffsetUpdate(mTargetOffset);
+            if (!mRunning) {
+                // Unless the listener started us again
+                dispatchAnimationEnd();
+            }
+        } else {
+            // Post before dispatching, so that the listener can still cancel or retarget us
+            Choreographer.getInstance().postFrameCallback(mFrameCallback);
+            dispatchOffsetUpdate(Math.round(mPosition));
+        }
+    }
+}
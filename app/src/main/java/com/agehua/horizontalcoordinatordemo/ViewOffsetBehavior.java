@@ -30,6 +30,8 @@ class ViewOffsetBehavior<V extends View> extends HorizontalCoordinatorLayout.Beh
     private int mTempTopBottomOffset = 0;
     private int mTempLeftRightOffset = 0;
 
+    private int mOffsetMode = ViewOffsetHelper.OFFSET_MODE_LAYOUT;
+
     public ViewOffsetBehavior() {}
 
     public ViewOffsetBehavior(Context context, AttributeSet attrs) {
@@ -43,15 +45,18 @@ class ViewOffsetBehavior<V extends View> extends HorizontalCoordinatorLayout.Beh
 
         if (mViewOffsetHelper == null) {
             mViewOffsetHelper = new ViewOffsetHelper(child);
+            mViewOffsetHelper.setOffsetMode(mOffsetMode);
         }
         mViewOffsetHelper.onViewLayout();
 
-        if (mTempTopBottomOffset != 0) {
-            mViewOffsetHelper.setTopAndBottomOffset(mTempTopBottomOffset);
+        if (mTempTopBottomOffset != 0 || mTempLeftRightOffset != 0) {
+            // Apply both pending offsets with a single move
+            mViewOffsetHelper.setOffsets(
+                    mTempLeftRightOffset != 0
+                            ? mTempLeftRightOffset : mViewOffsetHelper.getLeftAndRightOffset(),
+                    mTempTopBottomOffset != 0
+                            ? mTempTopBottomOffset : mViewOffsetHelper.getTopAndBottomOffset());
             mTempTopBottomOffset = 0;
-        }
-        if (mTempLeftRightOffset != 0) {
-            mViewOffsetHelper.setLeftAndRightOffset(mTempLeftRightOffset);
             mTempLeftRightOffset = 0;
         }
 
@@ -81,6 +86,25 @@ class ViewOffsetBehavior<V extends View> extends HorizontalCoordinatorLayout.Beh
         return false;
     }
 
+    /**
+     * Set whether the offsets of the view are applied by moving its layout bounds (the default)
+     * or through its translationX/Y. With translation the view moves without changing its
+     * bounds or invalidating its parent, but the Behavior then owns the view's translation.
+     *
+     * @param useTranslation true to apply offsets through the view's translation
+     */
+    public void setOffsetByTranslation(boolean useTranslation) {
+        mOffsetMode = useTranslation
+                ? ViewOffsetHelper.OFFSET_MODE_TRANSLATION : ViewOffsetHelper.OFFSET_MODE_LAYOUT;
+        if (mViewOffsetHelper != null) {
+            mViewOffsetHelper.setOffsetMode(mOffsetMode);
+        }
+    }
+
+    public boolean isOffsetByTranslation() {
+        return mOffsetMode == ViewOffsetHelper.OFFSET_MODE_TRANSLATION;
+    }
+
     public int getTopAndBottomOffset() {
         return mViewOffsetHelper != null ? mViewOffsetHelper.getTopAndBottomOffset() : 0;
     }
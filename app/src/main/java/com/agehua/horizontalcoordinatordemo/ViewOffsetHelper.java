@@ -18,23 +18,40 @@ package com.agehua.horizontalcoordinatordemo;
 
 import android.support.v4.view.ViewCompat;
 import android.view.View;
+import android.view.ViewParent;
 
 /**
  * Utility helper for moving a {@link View} around using
  * {@link View#offsetLeftAndRight(int)} and
- * {@link View#offsetTopAndBottom(int)}.
+ * {@link View#offsetTopAndBottom(int)}, or optionally its translation.
  * <p>
  * Also the setting of absolute offsets (similar to translationX/Y), rather than additive
  * offsets.
  */
 class ViewOffsetHelper {
 
+    /**
+     * Offsets are applied by moving the layout bounds of the view.
+     */
+    static final int OFFSET_MODE_LAYOUT = 0;
+
+    /**
+     * Offsets are applied through the translationX/Y of the view, leaving its layout bounds
+     * untouched. Moving the view then only updates its render properties, but anything else
+     * animating the translation of the same view will be overwritten.
+     */
+    static final int OFFSET_MODE_TRANSLATION = 1;
+
     private final View mView;
 
+    private int mOffsetMode = OFFSET_MODE_LAYOUT;
+
     private int mLayoutTop;
     private int mLayoutLeft;
     private int mOffsetTop;
     private int mOffsetLeft;
+    // Whether onViewLayout() has recorded where the view was laid out
+    private boolean mLayoutRecorded;
 
     public ViewOffsetHelper(View view) {
         mView = view;
@@ -44,14 +61,147 @@ class ViewOffsetHelper {
         // Now grab the intended top
         mLayoutTop = mView.getTop();
         mLayoutLeft = mView.getLeft();
+        mLayoutRecorded = true;
 
         // And offset it as needed
         updateOffsets();
     }
 
     private void updateOffsets() {
-        ViewCompat.offsetTopAndBottom(mView, mOffsetTop - (mView.getTop() - mLayoutTop));
-        ViewCompat.offsetLeftAndRight(mView, mOffsetLeft - (mView.getLeft() - mLayoutLeft));
+        if (applyOffsets()) {
+            notifyParentOfMove(mView.getParent());
+        }
+    }
+
+    /**
+     * Move the view to its current offsets, returning true if it moved.
+     */
+    private boolean applyOffsets() {
+        if (!mLayoutRecorded) {
+            // onViewLayout() applies the offsets once there is a layout to apply them to
+            return false;
+        }
+
+        // Only touch the axes which actually move, as every offset call invalidates
+        boolean moved = false;
+        if (mOffsetMode == OFFSET_MODE_TRANSLATION) {
+            if (mView.getTranslationY() != mOffsetTop) {
+                mView.setTranslationY(mOffsetTop);
+                moved = true;
+            }
+            if (mView.getTranslationX() != mOffsetLeft) {
+                mView.setTranslationX(mOffsetLeft);
+                moved = true;
+            }
+        } else {
+            final int dy = mOffsetTop - (mView.getTop() - mLayoutTop);
+            if (dy != 0) {
+                ViewCompat.offsetTopAndBottom(mView, dy);
+                moved = true;
+            }
+            final int dx = mOffsetLeft - (mView.getLeft() - mLayoutLeft);
+            if (dx != 0) {
+                ViewCompat.offsetLeftAndRight(mView, dx);
+                moved = true;
+            }
+        }
+        return moved;
+    }
+
+    private static void notifyParentOfMove(ViewParent parent) {
+        if (parent instanceof HorizontalCoordinatorLayout) {
+            // Let the coordinator know that it needs to check the dependent views
+            ((HorizontalCoordinatorLayout) parent).notifyChildPositionsChanged();
+        }
+    }
+
+    /**
+     * Set both offsets for this {@link ViewOffsetHelper}'s view, moving it at most once.
+     *
+     * @param leftAndRightOffset the left and right offset in px.
+     * @param topAndBottomOffset the top and bottom offset in px.
+     * @return true if either offset has changed
+     */
+    public boolean setOffsets(int leftAndRightOffset, int topAndBottomOffset) {
+        if (mOffsetLeft != leftAndRightOffset || mOffsetTop != topAndBottomOffset) {
+            mOffsetLeft = leftAndRightOffset;
+            mOffsetTop = topAndBottomOffset;
+            updateOffsets();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Set the left and right offsets of several helpers in one go. Each view is moved at most
+     * once, and each parent is only told once that its children have moved.
+     *
+     * @param helpers the helpers to update
+     * @param offsets the new left and right offset in px of the helper at the same index
+     * @param count the number of helpers to update, starting at index 0
+     * @return true if any of the offsets has changed
+     */
+    static boolean setLeftAndRightOffsets(ViewOffsetHelper[] helpers, int[] offsets, int count) {
+        boolean changed = false;
+        ViewParent notifiedParent = null;
+        for (int i = 0; i < count; i++) {
+            final ViewOffsetHelper helper = helpers[i];
+            if (helper.mOffsetLeft == offsets[i]) {
+                continue;
+            }
+            helper.mOffsetLeft = offsets[i];
+            changed = true;
+
+            final ViewParent parent = helper.mView.getParent();
+            // Views of one batch usually share their parent, which only needs telling once
+            if (helper.applyOffsets() && parent != notifiedParent) {
+                notifyParentOfMove(parent);
+                notifiedParent = parent;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Set how the offsets are applied to the view, either {@link #OFFSET_MODE_LAYOUT} or
+     * {@link #OFFSET_MODE_TRANSLATION}. The current offsets are moved over to the new mode.
+     */
+    public void setOffsetMode(int mode) {
+        if (mOffsetMode != mode) {
+            if (!mLayoutRecorded) {
+                // Nothing has been applied yet, so there is nothing to move back
+                mOffsetMode = mode;
+                return;
+            }
+            if (mOffsetMode == OFFSET_MODE_TRANSLATION) {
+                mView.setTranslationX(0f);
+                mView.setTranslationY(0f);
+            } else {
+                // Move the view back to where it was laid out
+                ViewCompat.offsetTopAndBottom(mView, mLayoutTop - mView.getTop());
+                ViewCompat.offsetLeftAndRight(mView, mLayoutLeft - mView.getLeft());
+            }
+            mOffsetMode = mode;
+            updateOffsets();
+        }
+    }
+
+    public int getOffsetMode() {
+        return mOffsetMode;
+    }
+
+    /**
+     * Returns the left edge of the given view as drawn, which includes its translation.
+     */
+    static int getVisualLeft(View view) {
+        return view.getLeft() + Math.round(view.getTranslationX());
+    }
+
+    /**
+     * Returns the right edge of the given view as drawn, which includes its translation.
+     */
+    static int getVisualRight(View view) {
+        return view.getRight() + Math.round(view.getTranslationX());
     }
 
     /**
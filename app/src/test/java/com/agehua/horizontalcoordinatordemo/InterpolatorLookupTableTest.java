@@ -0,0 +1,128 @@
+package com.agehua.horizontalcoordinatordemo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.view.animation.Interpolator;
+
+import org.junit.Test;
+
+public class InterpolatorLookupTableTest {
+
+    // Leaves room for float rounding in the table and in the source itself
+    private static final float TOLERANCE = 1e-6f;
+
+    private static final int[] SAMPLE_COUNTS = {
+            2, 3, 5, 17, 33, InterpolatorLookupTable.DEFAULT_SAMPLE_COUNT};
+
+    // How many inputs each table is compared with its source at
+    private static final int CHECK_COUNT = 10000;
+
+    private static final Interpolator LINEAR = new Interpolator() {
+        @Override
+        public float getInterpolation(float input) {
+            return input;
+        }
+    };
+
+    // f''(x) = 2
+    private static final Interpolator QUADRATIC = new Interpolator() {
+        @Override
+        public float getInterpolation(float input) {
+            return input * input;
+        }
+    };
+
+    // f''(x) = 6x, at most 6 on [0, 1]
+    private static final Interpolator CUBIC = new Interpolator() {
+        @Override
+        public float getInterpolation(float input) {
+            return input * input * input;
+        }
+    };
+
+    // f''(x) = 6 - 12x, at most 6 on [0, 1]
+    private static final Interpolator SMOOTHSTEP = new Interpolator() {
+        @Override
+        public float getInterpolation(float input) {
+            return input * input * (3f - 2f * input);
+        }
+    };
+
+    // f''(x) = pi^2 / 2 * cos(pi * x), at most pi^2 / 2 on [0, 1]
+    private static final Interpolator COSINE = new Interpolator() {
+        @Override
+        public float getInterpolation(float input) {
+            return (float) (1 - Math.cos(Math.PI * input)) / 2f;
+        }
+    };
+
+    @Test
+    public void linearIsExact() {
+        assertWithinBound(LINEAR, 0f);
+    }
+
+    @Test
+    public void quadraticWithinBound() {
+        assertWithinBound(QUADRATIC, 2f);
+    }
+
+    @Test
+    public void cubicWithinBound() {
+        assertWithinBound(CUBIC, 6f);
+    }
+
+    @Test
+    public void smoothstepWithinBound() {
+        assertWithinBound(SMOOTHSTEP, 6f);
+    }
+
+    @Test
+    public void cosineWithinBound() {
+        assertWithinBound(COSINE, (float) (Math.PI * Math.PI / 2));
+    }
+
+    @Test
+    public void matchesSourceAtSamples() {
+        final int sampleCount = 17;
+        final InterpolatorLookupTable table = new InterpolatorLookupTable(COSINE, sampleCount);
+        for (int i = 0; i < sampleCount; i++) {
+            final float input = i / (float) (sampleCount - 1);
+            assertEquals(COSINE.getInterpolation(input), table.getInterpolation(input),
+                    TOLERANCE);
+        }
+    }
+
+    @Test
+    public void delegatesOutsideOfTable() {
+        final InterpolatorLookupTable table = new InterpolatorLookupTable(QUADRATIC);
+        assertEquals(QUADRATIC.getInterpolation(-0.5f), table.getInterpolation(-0.5f), 0f);
+        assertEquals(QUADRATIC.getInterpolation(1.5f), table.getInterpolation(1.5f), 0f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsSingleSample() {
+        new InterpolatorLookupTable(LINEAR, 1);
+    }
+
+    /**
+     * Check that a table of each sample count stays within {@code M / (8 * (n - 1)^2)} of the
+     * source, where {@code M} bounds the source's second derivative.
+     */
+    private static void assertWithinBound(Interpolator source, float maxSecondDerivative) {
+        for (int sampleCount : SAMPLE_COUNTS) {
+            final InterpolatorLookupTable table = new InterpolatorLookupTable(source, sampleCount);
+            final float bound = maxSecondDerivative
+                    / (8f * (sampleCount - 1) * (sampleCount - 1));
+
+            float maxError = 0f;
+            for (int i = 0; i <= CHECK_COUNT; i++) {
+                final float input = i / (float) CHECK_COUNT;
+                maxError = Math.max(maxError,
+                        Math.abs(source.getInterpolation(input) - table.getInterpolation(input)));
+            }
+            assertTrue("Error " + maxError + " with " + sampleCount + " samples is above "
+                    + bound, maxError <= bound + TOLERANCE);
+        }
+    }
+}